@@ -0,0 +1,191 @@
+package com.yadav.lox;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// An actor, made by actor(handler): a mailbox and a function that
+// handles its messages one at a time, in the order they were sent. send()
+// never waits. stop() lets the actor handle what was sent before it and
+// then end; join(actor) waits for that, and raises the error if the
+// handler failed, which also ends the actor.
+//
+// An actor holds no thread while its mailbox is empty. Sending to an
+// idle actor schedules it on the task pool, where it handles a batch of
+// messages and then either schedules itself again or goes idle, so any
+// number of actors share the pool's workers. The mailbox is a lock-free
+// queue, and the scheduled flag makes sure only one worker runs the
+// handler at a time; each run happens before the next, so the handler's
+// own variables need no synchronizing.
+class Actor implements NativeObject, TaskGroup.Work {
+  // Messages handled per turn on a worker before giving it up, so busy
+  // actors take turns with each other and with tasks.
+  private static final int BATCH = 64;
+
+  // Put in the mailbox by stop().
+  private static final Object STOP = new Object();
+  // The queue can't hold null, so a nil message travels as this.
+  private static final Object NIL = new Object();
+
+  private final LoxCallable handler;
+  private final Interpreter interpreter;
+  private final TaskGroup group;
+  private final Queue<Object> mailbox = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+  private volatile boolean stopping = false;
+  private volatile boolean joined = false;
+
+  // Set by the run that fails, before it completes stopped.
+  private volatile RuntimeException error;
+
+  Actor(LoxCallable handler, Interpreter spawner, TaskGroup group) {
+    this.handler = handler;
+    this.interpreter = spawner.forTask();
+    this.group = group;
+  }
+
+  void send(Object message) {
+    if (stopping) throw new NativeError("Can't send to a stopped actor.");
+    mailbox.add(message == null ? NIL : message);
+    wake();
+  }
+
+  void stop() {
+    if (stopping) return;
+    stopping = true;
+    mailbox.add(STOP);
+    wake();
+  }
+
+  private void wake() {
+    if (scheduled.compareAndSet(false, true)) {
+      group.started();
+      Task.schedule(new Run());
+    }
+  }
+
+  private final class Run extends RecursiveAction {
+    @Override
+    protected void compute() {
+      try {
+        for (int i = 0; i < BATCH; i++) {
+          Object message = mailbox.poll();
+          if (message == null) break;
+          if (message == STOP) {
+            finish(null);
+            return;
+          }
+          handler.call1(interpreter, message == NIL ? null : message);
+        }
+        interpreter.drainEvents();
+      } catch (RuntimeError | NativeError error) {
+        finish(error);
+        return;
+      }
+
+      if (!mailbox.isEmpty()) {
+        // Still scheduled; let the worker run something else first.
+        Task.schedule(new Run());
+        return;
+      }
+      scheduled.set(false);
+      // A message sent after the poll above but before the flag was
+      // cleared found the actor still scheduled, so it is picked up here.
+      if (!mailbox.isEmpty()) wake();
+      group.finished(Actor.this);
+    }
+  }
+
+  // Ends the actor. It stays scheduled for good, so sends after this
+  // never run the handler again.
+  private void finish(RuntimeException error) {
+    stopping = true;
+    mailbox.clear();
+    this.error = error;
+    stopped.complete(null);
+    group.finished(this);
+  }
+
+  @Override
+  public RuntimeException error() {
+    return error;
+  }
+
+  @Override
+  public boolean joined() {
+    return joined;
+  }
+
+  // Waits until the actor has stopped and raises the error that stopped
+  // it, if any. CompletableFuture.join() blocks through managedBlock() on
+  // a worker of the task pool.
+  void await() {
+    joined = true;
+    stopped.join();
+    if (error != null) throw error;
+  }
+
+  @Override
+  public Object get(Token name) {
+    switch (name.lexeme) {
+      case "send":
+        return new Method(name, 1);
+      case "stop":
+        return new Method(name, 0);
+      default:
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+  }
+
+  private class Method implements LoxCallable {
+    private final Token name;
+    private final int arity;
+
+    Method(Token name, int arity) {
+      this.name = name;
+      this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+      return arity;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+      if (!name.lexeme.equals("stop")) throw wrongArity(0);
+      stop();
+      return null;
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+      if (!name.lexeme.equals("send")) throw wrongArity(1);
+      send(a);
+      return null;
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+      throw wrongArity(arguments.length);
+    }
+
+    // The interpreter checks arity before calling, so this is a backstop.
+    private RuntimeError wrongArity(int count) {
+      return new RuntimeError(name, "Expected " + arity + " arguments but got " + count + ".");
+    }
+
+    @Override
+    public String toString() {
+      return "<native fn>";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "<actor>";
+  }
+}
@@ -114,6 +114,31 @@ class AstPrinter implements Expr.Visitor<String> {
     System.out.println(new AstPrinter().print(expression));
   }
 
+  @Override
+  public String visitArrayExpr(Expr.Array expr) {
+    return parenthesize("array", expr.elements.toArray(new Expr[0]));
+  }
+
+  @Override
+  public String visitIndexExpr(Expr.Index expr) {
+    return parenthesize("[]", expr.object, expr.index);
+  }
+
+  @Override
+  public String visitIndexSetExpr(Expr.IndexSet expr) {
+    return parenthesize("[]=", expr.object, expr.index, expr.value);
+  }
+
+  @Override
+  public String visitSuperExpr(Expr.Super expr) {
+    return parenthesize("super " + expr.method.lexeme);
+  }
+
+  @Override
+  public String visitThisExpr(Expr.This expr) {
+    return "this";
+  }
+
   @Override
   public String visitCallExpr(Call expr) {
     // TODO Auto-generated method stub
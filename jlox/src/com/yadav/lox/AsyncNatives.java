@@ -0,0 +1,69 @@
+package com.yadav.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Natives that start work in the background and return a Promise
+// right away. await(promise) runs the event loop until it settles.
+final class AsyncNatives {
+  private static final LoxString EXIT_CODE = LoxString.intern("exitCode");
+  private static final LoxString OUTPUT = LoxString.intern("output");
+
+  private AsyncNatives() {}
+
+  @Native
+  static Object sleep(Interpreter interpreter, double millis) {
+    if (millis < 0) throw new NativeError("Sleep time must not be negative.");
+    return interpreter.eventLoop().delay((long)millis);
+  }
+
+  @Native
+  static Object readFileAsync(Interpreter interpreter, String path) {
+    return interpreter.eventLoop().submit(() -> {
+      try {
+        return new LoxString(Files.readString(Path.of(path), StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        throw new IOException("Could not read '" + path + "'.");
+      }
+    });
+  }
+
+  // Runs a command, split on whitespace, and settles with a map of its
+  // "exitCode" and its standard "output".
+  @Native
+  static Object exec(Interpreter interpreter, String command) {
+    String[] words = command.trim().split("\\s+");
+    if (words.length == 0 || words[0].isEmpty()) throw new NativeError("Command is empty.");
+
+    return interpreter.eventLoop().submit(() -> {
+      Process process = new ProcessBuilder(Arrays.asList(words))
+          .redirectErrorStream(true)
+          .start();
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      try (InputStream in = process.getInputStream()) {
+        in.transferTo(output);
+      }
+      int exitCode = process.waitFor();
+
+      LoxMap result = new LoxMap();
+      result.put(EXIT_CODE, (double)exitCode);
+      result.put(OUTPUT, new LoxString(output.toString(StandardCharsets.UTF_8)));
+      return result;
+    });
+  }
+
+  @Native
+  static Object await(Interpreter interpreter, Object promise) {
+    if (!(promise instanceof Promise)) return promise;
+    EventLoop loop = interpreter.eventLoop();
+    if (!((Promise)promise).belongsTo(loop)) {
+      throw new NativeError("Can only await promises made by the same task.");
+    }
+    return loop.await((Promise)promise);
+  }
+}
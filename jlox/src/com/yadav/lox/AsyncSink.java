@@ -0,0 +1,79 @@
+package com.yadav.lox;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+// A BufferedSink whose chunks are written by a dedicated thread, so the
+// interpreter only blocks on output when the writer falls several chunks
+// behind, or on flush(), which waits until everything queued so far has
+// been written.
+class AsyncSink extends BufferedSink {
+  private static final int MAX_PENDING_CHUNKS = 4;
+
+  // Strings to write, or a latch to count down once everything queued
+  // before it is out.
+  private final BlockingQueue<Object> pending = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+
+  AsyncSink(PrintStream out) {
+    super(out);
+    Thread writer = new Thread(this::writeChunks, "lox-output");
+    // Exit paths flush first; a daemon thread can't keep a finished
+    // program alive.
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @Override
+  protected void write(String chunk) {
+    enqueue(chunk);
+  }
+
+  @Override
+  public synchronized void flush() {
+    drain();
+    CountDownLatch written = new CountDownLatch(1);
+    enqueue(written);
+
+    boolean interrupted = false;
+    while (true) {
+      try {
+        written.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  private void enqueue(Object item) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        pending.put(item);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  private void writeChunks() {
+    try {
+      while (true) {
+        Object item = pending.take();
+        if (item instanceof String) {
+          out.print((String)item);
+        } else {
+          out.flush();
+          ((CountDownLatch)item).countDown();
+        }
+      }
+    } catch (InterruptedException e) {
+      // Nothing interrupts the writer; if something does, stop writing.
+    }
+  }
+}
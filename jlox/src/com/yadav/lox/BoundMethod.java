@@ -0,0 +1,69 @@
+package com.yadav.lox;
+
+// A method looked up on an instance. The receiver is only bound into the
+// method's frame when it's called, so taking a method off an instance
+// allocates this pair and no environment.
+class BoundMethod implements LoxCallable {
+  final LoxInstance receiver;
+  final LoxFunction method;
+
+  BoundMethod(LoxInstance receiver, LoxFunction method) {
+    this.receiver = receiver;
+    this.method = method;
+  }
+
+  @Override
+  public int arity() {
+    return method.arity();
+  }
+
+  @Override
+  public Object call0(Interpreter interpreter) {
+    return run(interpreter, method.newFrame(receiver));
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a) {
+    Environment frame = method.newFrame(receiver);
+    method.bind(frame, 0, a);
+    return run(interpreter, frame);
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a, Object b) {
+    Environment frame = method.newFrame(receiver);
+    method.bind(frame, 0, a);
+    method.bind(frame, 1, b);
+    return run(interpreter, frame);
+  }
+
+  @Override
+  public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    Environment frame = method.newFrame(receiver);
+    method.bind(frame, 0, a);
+    method.bind(frame, 1, b);
+    method.bind(frame, 2, c);
+    return run(interpreter, frame);
+  }
+
+  @Override
+  public Object callN(Interpreter interpreter, Object[] arguments) {
+    Environment frame = method.newFrame(receiver);
+    for (int i = 0; i < arguments.length; i++) {
+      method.bind(frame, i, arguments[i]);
+    }
+    return run(interpreter, frame);
+  }
+
+  // An initializer always evaluates to its instance, even when called
+  // again directly or left with an early 'return;'.
+  private Object run(Interpreter interpreter, Environment frame) {
+    Object result = method.run(interpreter, frame);
+    return method.isInitializer ? receiver : result;
+  }
+
+  @Override
+  public String toString() {
+    return method.toString();
+  }
+}
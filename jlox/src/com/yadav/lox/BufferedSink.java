@@ -0,0 +1,69 @@
+package com.yadav.lox;
+
+import java.io.PrintStream;
+
+// Collects output in a large buffer and hands it to the stream a chunk
+// at a time, instead of one synchronized, autoflushing println() per
+// print statement. The stream still does the character encoding, so the
+// bytes are the same as printing each line directly. Tasks print
+// concurrently, so the public methods take the sink's lock.
+class BufferedSink implements OutputSink {
+  static final int DEFAULT_THRESHOLD = 1 << 16;
+
+  private static final String NEWLINE = System.lineSeparator();
+
+  protected final PrintStream out;
+  private final int threshold;
+  private final StringBuilder buffer;
+
+  BufferedSink(PrintStream out) {
+    this(out, DEFAULT_THRESHOLD);
+  }
+
+  BufferedSink(PrintStream out, int threshold) {
+    this.out = out;
+    this.threshold = threshold;
+    this.buffer = new StringBuilder(threshold + 256);
+  }
+
+  @Override
+  public synchronized void print(CharSequence text) {
+    buffer.append(text);
+    if (buffer.length() >= threshold) drain();
+  }
+
+  @Override
+  public synchronized void print(CharSequence text, int start, int end) {
+    buffer.append(text, start, end);
+    if (buffer.length() >= threshold) drain();
+  }
+
+  @Override
+  public synchronized void print(double number) {
+    NumberFormatter.append(buffer, number);
+    if (buffer.length() >= threshold) drain();
+  }
+
+  @Override
+  public synchronized void newline() {
+    buffer.append(NEWLINE);
+    if (buffer.length() >= threshold) drain();
+  }
+
+  @Override
+  public synchronized void flush() {
+    drain();
+    out.flush();
+  }
+
+  protected final void drain() {
+    if (buffer.length() == 0) return;
+    write(buffer.toString());
+    buffer.setLength(0);
+  }
+
+  // Writes one chunk of buffered output.
+  protected void write(String chunk) {
+    out.print(chunk);
+  }
+}
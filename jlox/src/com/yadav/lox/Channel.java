@@ -0,0 +1,301 @@
+package com.yadav.lox;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// A bounded channel between tasks, made by Channel(capacity). send()
+// waits while the channel is full and receive() while it is empty; once
+// the channel is closed and empty, receive() returns nil, which is why
+// nil can't be sent. Values come out in the order they went in, and
+// sending a value happens before receiving it.
+//
+// The buffer is a lock-free ring (Dmitry Vyukov's bounded MPMC queue):
+// each slot has a sequence number that says whether it is ready for the
+// next send or the next receive, so senders and receivers only contend
+// on claiming a position. The ring has a slot more than the capacity,
+// since the sequence numbers can't tell a full ring of one slot from an
+// empty one, and send() checks the bound itself. Only a task that has to
+// wait touches anything else. It parks after putting its thread on the
+// channel's list of waiters, and the other side wakes the first waiter
+// after each send or receive. Waiting goes through
+// ForkJoinPool.managedBlock(), so a worker of the task pool that blocks
+// here is replaced while it waits and the other tasks keep running.
+class Channel implements NativeObject {
+  private final int capacity;
+  private final int length;
+  private final AtomicReferenceArray<Object> slots;
+  private final AtomicLongArray sequences;
+  private final AtomicLong sendPosition = new AtomicLong();
+  private final AtomicLong receivePosition = new AtomicLong();
+  private volatile boolean closed = false;
+
+  private final Queue<Thread> waitingReceivers = new ConcurrentLinkedQueue<>();
+  private final Queue<Thread> waitingSenders = new ConcurrentLinkedQueue<>();
+
+  Channel(int capacity) {
+    this.capacity = capacity;
+    this.length = capacity + 1;
+    this.slots = new AtomicReferenceArray<>(length);
+    this.sequences = new AtomicLongArray(length);
+    for (int i = 0; i < length; i++) sequences.set(i, i);
+  }
+
+  // Adds the value if there's room, without waiting.
+  boolean offer(Object value) {
+    while (true) {
+      long position = sendPosition.get();
+      if (position - receivePosition.get() >= capacity) return false;
+      int index = (int)(position % length);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (sendPosition.compareAndSet(position, position + 1)) {
+          slots.set(index, value);
+          sequences.set(index, position + 1);
+          wakeFirst(waitingReceivers);
+          return true;
+        }
+      } else if (difference < 0) {
+        return false;
+      }
+      // Otherwise another sender claimed the position first; try the next.
+    }
+  }
+
+  // Takes the oldest value, or returns null if there is none.
+  Object poll() {
+    while (true) {
+      long position = receivePosition.get();
+      int index = (int)(position % length);
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (receivePosition.compareAndSet(position, position + 1)) {
+          Object value = slots.get(index);
+          slots.set(index, null);
+          sequences.set(index, position + length);
+          wakeFirst(waitingSenders);
+          return value;
+        }
+      } else if (difference < 0) {
+        return null;
+      }
+    }
+  }
+
+  private boolean isEmpty() {
+    long position = receivePosition.get();
+    return sequences.get((int)(position % length)) != position + 1;
+  }
+
+  private boolean isFull() {
+    return sendPosition.get() - receivePosition.get() >= capacity;
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  void send(Object value) {
+    if (value == null) throw new NativeError("Can't send nil on a channel.");
+    if (closed) throw new NativeError("Can't send on a closed channel.");
+    if (offer(value)) return;
+
+    Thread self = Thread.currentThread();
+    waitingSenders.add(self);
+    try {
+      while (true) {
+        if (closed) throw new NativeError("Can't send on a closed channel.");
+        if (offer(value)) return;
+        block(() -> closed || !isFull());
+      }
+    } finally {
+      leave(waitingSenders, self, () -> !isFull());
+    }
+  }
+
+  // The next value, or nil once the channel is closed and empty.
+  Object receive() {
+    Object value = poll();
+    if (value != null) return value;
+
+    Thread self = Thread.currentThread();
+    waitingReceivers.add(self);
+    try {
+      while (true) {
+        value = poll();
+        if (value != null) return value;
+        // Closing happens after the last send, so a poll after seeing
+        // the channel closed finds anything that was still in it.
+        if (closed) return poll();
+        block(() -> closed || !isEmpty());
+      }
+    } finally {
+      leave(waitingReceivers, self, () -> !isEmpty());
+    }
+  }
+
+  // Receives from whichever of the channels has a value first, trying
+  // them from a different one each time so that none is starved. Returns
+  // the index of that channel and the value, or -1 once every channel is
+  // closed and empty.
+  static Object[] select(Channel[] channels, int start) {
+    Object[] ready = trySelect(channels, start);
+    if (ready != null) return ready;
+
+    Thread self = Thread.currentThread();
+    for (Channel channel : channels) channel.waitingReceivers.add(self);
+    try {
+      while (true) {
+        ready = trySelect(channels, start);
+        if (ready != null) return ready;
+        block(() -> {
+          for (Channel channel : channels) {
+            if (!channel.isEmpty()) return true;
+          }
+          return allClosed(channels);
+        });
+      }
+    } finally {
+      for (Channel channel : channels) {
+        leave(channel.waitingReceivers, self, () -> !channel.isEmpty());
+      }
+    }
+  }
+
+  private static Object[] trySelect(Channel[] channels, int start) {
+    // Read before polling, for the same reason as in receive().
+    boolean allClosed = allClosed(channels);
+    for (int i = 0; i < channels.length; i++) {
+      int index = (start + i) % channels.length;
+      Object value = channels[index].poll();
+      if (value != null) return new Object[] {(double)index, value};
+    }
+    return allClosed ? new Object[] {-1.0, null} : null;
+  }
+
+  private static boolean allClosed(Channel[] channels) {
+    for (Channel channel : channels) {
+      if (!channel.closed) return false;
+    }
+    return true;
+  }
+
+  void close() {
+    closed = true;
+    for (Thread thread : waitingReceivers) LockSupport.unpark(thread);
+    for (Thread thread : waitingSenders) LockSupport.unpark(thread);
+  }
+
+  private static void wakeFirst(Queue<Thread> waiters) {
+    Thread first = waiters.peek();
+    if (first != null) LockSupport.unpark(first);
+  }
+
+  // A waiter that was woken but is leaving, with a value it didn't take
+  // or room it didn't use, passes the wakeup on to the next one. The
+  // check comes after the removal: a send or receive that found this
+  // thread still first in line is seen by it.
+  private static void leave(Queue<Thread> waiters, Thread self,
+                            Condition left) {
+    waiters.remove(self);
+    if (left.holds()) wakeFirst(waiters);
+  }
+
+  private interface Condition {
+    boolean holds();
+  }
+
+  // Parks until the condition holds. The caller is already on a list of
+  // waiters, so a change that happens between checking and parking
+  // unparks it and the park returns at once.
+  private static void block(Condition ready) {
+    try {
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        @Override
+        public boolean block() {
+          LockSupport.park(this);
+          return ready.holds();
+        }
+
+        @Override
+        public boolean isReleasable() {
+          return ready.holds();
+        }
+      });
+    } catch (InterruptedException e) {
+      // Nothing interrupts tasks on purpose; the caller checks again.
+    }
+  }
+
+  @Override
+  public Object get(Token name) {
+    switch (name.lexeme) {
+      case "capacity": return (double)capacity;
+      case "send": return new Method(name, 1);
+      case "receive": return new Method(name, 0);
+      case "close": return new Method(name, 0);
+      default:
+        throw new RuntimeError(name,
+            "Undefined property '" + name.lexeme + "'.");
+    }
+  }
+
+  private class Method implements LoxCallable {
+    private final Token name;
+    private final int arity;
+
+    Method(Token name, int arity) {
+      this.name = name;
+      this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+      return arity;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+      switch (name.lexeme) {
+        case "receive":
+          return receive();
+        case "close":
+          close();
+          return null;
+        default:
+          throw wrongArity(0);
+      }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+      if (!name.lexeme.equals("send")) throw wrongArity(1);
+      send(a);
+      return null;
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+      throw wrongArity(arguments.length);
+    }
+
+    private RuntimeError wrongArity(int count) {
+      return new RuntimeError(name,
+          "Expected " + arity + " arguments but got " + count + ".");
+    }
+
+    @Override
+    public String toString() {
+      return "<native fn>";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "<channel>";
+  }
+}
@@ -0,0 +1,59 @@
+package com.yadav.lox;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// A program that has been scanned, parsed and resolved, along with the
+// modules it imports. Nothing in it changes once it is built, so it can
+// be compiled once and then run any number of times, by any number of
+// interpreters at once, each paying only for execution.
+final class CompiledProgram {
+  final List<Stmt> statements;
+  final Resolution resolution;
+
+  // The module behind every import statement in the program and in the
+  // modules it imports.
+  final Map<Stmt.Import, LoxModule> imports;
+
+  // The functions whose calls can be memoized, for interpreters that do.
+  final Set<Stmt.Function> pureFunctions;
+
+  private CompiledProgram(List<Stmt> statements, Resolution resolution,
+      Map<Stmt.Import, LoxModule> imports) {
+    this.statements = Collections.unmodifiableList(new ArrayList<>(statements));
+    this.resolution = resolution;
+    this.imports = Map.copyOf(imports);
+    this.pureFunctions = Set.copyOf(
+        new PurityAnalyzer(resolution.locals, this.imports).pureFunctions(statements));
+  }
+
+  // Returns null when there were errors, which have been reported.
+  // Imports are found relative to origin, the file the source came from,
+  // or to the working directory when it is null.
+  static CompiledProgram compile(String source, Path origin, ModuleLoader modules,
+      ErrorReporter errors) {
+    Scanner scanner = new Scanner(source, errors);
+    List<Token> tokens = scanner.scanTokens();
+
+    Parser parser = new Parser(tokens, errors);
+    List<Stmt> statements = parser.parse();
+
+    // Stop if there was a syntax error
+    if (errors.hadError()) return null;
+
+    Resolver resolver = new Resolver(errors);
+    resolver.resolve(statements);
+
+    // Stop if there was a resolution error
+    if (errors.hadError()) return null;
+
+    Map<Stmt.Import, LoxModule> imports = modules.load(statements, origin, errors);
+    if (errors.hadError()) return null;
+
+    return new CompiledProgram(statements, resolver.resolution(), imports);
+  }
+}
@@ -0,0 +1,14 @@
+package com.yadav.lox;
+
+// How a statement finished executing. Statements hand this back through
+// execute() instead of throwing, so a 'return' unwinds to the function
+// call without an exception. The returned value itself is parked in the
+// interpreter until the call picks it up with takeReturnValue().
+//
+// TAIL_CALL is a 'return f(...)' whose call has been evaluated up to the
+// point of invoking f; the calling LoxFunction runs it in place.
+enum Completion {
+  NORMAL,
+  RETURN,
+  TAIL_CALL
+}
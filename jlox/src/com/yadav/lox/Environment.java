@@ -2,10 +2,22 @@ package com.yadav.lox;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Variables are the one kind of Lox state that tasks may share without
+// synchronizing (see TaskNatives). Another task can only reach an
+// environment through a function that closes over it, so a scope starts
+// out with a plain HashMap and moves to a ConcurrentHashMap when it is
+// shared: a task reading a variable while another defines or assigns one
+// in the same scope then sees either the old value or the new one. The
+// frames of calls that declare no functions stay plain. A
+// ConcurrentHashMap can't hold null, so nil is stored as NIL in both.
 class Environment {
+  private static final Object NIL = new Object();
+
   Environment enclosing;
-  private final Map<String, Object> values = new HashMap<>();
+  private Map<String, Object> values = new HashMap<>();
+  private boolean shared = false;
 
   Environment() {
     enclosing = null;
@@ -15,6 +27,18 @@ class Environment {
     this.enclosing = enclosing;
   }
 
+  // Makes this scope and the ones around it safe to use from any task.
+  // Called on the thread that made the scope, before anything that closes
+  // over it exists: LoxFunction does it when it's created, and its final
+  // closure field publishes the new maps with it. Scopes further out that
+  // are already shared have had their own ancestors shared too.
+  void share() {
+    for (Environment scope = this; scope != null && !scope.shared; scope = scope.enclosing) {
+      scope.values = new ConcurrentHashMap<>(scope.values);
+      scope.shared = true;
+    }
+  }
+
   Environment ancestor(int distance) {
     Environment environment = this;
     for (int i = 0; i < distance; i++) {
@@ -24,28 +48,32 @@ class Environment {
     return environment;
   }
 
+  private static Object wrap(Object value) {
+    return value == null ? NIL : value;
+  }
+
+  private static Object unwrap(Object value) {
+    return value == NIL ? null : value;
+  }
+
   Object get(Token name) {
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
-    }
+    Object value = values.get(name.lexeme);
+    if (value != null) return unwrap(value);
 
     if (enclosing != null) return enclosing.get(name);
     throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
   }
 
   Object getAt(int distance, String name) {
-    return ancestor(distance).values.get(name);
+    return unwrap(ancestor(distance).values.get(name));
   }
 
   void define(String name, Object value) {
-    values.put(name, value);
+    values.put(name, wrap(value));
   }
 
   void assign(Token name, Object value) {
-    if (values.containsKey(name.lexeme)) {
-      values.put(name.lexeme, value);
-      return;
-    }
+    if (values.replace(name.lexeme, wrap(value)) != null) return;
 
     if (enclosing != null) {
       enclosing.assign(name, value);
@@ -56,6 +84,6 @@ class Environment {
   }
 
   void assignAt(int distance, Token name, Object value) {
-    ancestor(distance).values.put(name.lexeme, value);
+    ancestor(distance).values.put(name.lexeme, wrap(value));
   }
 }
@@ -0,0 +1,72 @@
+package com.yadav.lox;
+
+import java.io.PrintStream;
+
+// Reports the errors of one isolate and remembers whether there were
+// any. Modules are compiled on several threads at once, so reports are
+// serialized and the flags are volatile.
+class ErrorReporter {
+  private final PrintStream err;
+
+  // Flushed before each report so that a terminal shows the output and
+  // the errors in the order they happened.
+  private final OutputSink output;
+
+  private volatile boolean hadError = false;
+  private volatile boolean hadRuntimeError = false;
+
+  ErrorReporter(PrintStream err, OutputSink output) {
+    this.err = err;
+    this.output = output;
+  }
+
+  boolean hadError() {
+    return hadError;
+  }
+
+  boolean hadRuntimeError() {
+    return hadRuntimeError;
+  }
+
+  // Forgets earlier compile errors, so the prompt can go on after a line
+  // that didn't parse.
+  void clearError() {
+    hadError = false;
+  }
+
+  // Where diagnostics other than errors, like --stats, are written.
+  PrintStream stream() {
+    return err;
+  }
+
+  void error(int line, String message) {
+    report(line, "", message);
+  }
+
+  void error(Token token, String message) {
+    if (token.type == TokenType.EOF) {
+      report(token.line, " at end", message);
+    } else {
+      report(token.line, " at " + token.lexeme + "'", message);
+    }
+  }
+
+  synchronized void runtimeError(RuntimeError error) {
+    output.flush();
+    err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+    hadRuntimeError = true;
+  }
+
+  // A runtime error with no line to blame.
+  synchronized void runtimeError(String message) {
+    output.flush();
+    err.println(message);
+    hadRuntimeError = true;
+  }
+
+  private synchronized void report(int line, String where, String message) {
+    output.flush();
+    err.println("[line " + line + "] Error" + where + ": " + message);
+    hadError = true;
+  }
+}
@@ -0,0 +1,122 @@
+package com.yadav.lox;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Runs asynchronous natives for one interpreter. Blocking work goes to
+// background threads and timers to a scheduler; neither touches Lox
+// state. They post their completions to a queue, and the interpreter's
+// thread settles promises and runs callbacks as it takes them off, when
+// a script awaits or when the program's statements have all run.
+class EventLoop {
+  // Shared by every event loop in the JVM; the work they run never
+  // touches Lox state.
+  private static final ExecutorService workers =
+      Threads.virtualOr(() -> Executors.newCachedThreadPool(Threads.daemon("lox-async")));
+  private static final ScheduledExecutorService timers =
+      Executors.newSingleThreadScheduledExecutor(Threads.daemon("lox-timer"));
+
+  private final BlockingQueue<Runnable> completions = new LinkedBlockingQueue<>();
+
+  // Background operations started but not yet posted back. Only touched
+  // on the interpreter's thread.
+  private int inFlight = 0;
+
+  // Runs the work on a background thread; the promise settles with its
+  // result, or fails with its exception's message.
+  Promise submit(Callable<Object> work) {
+    Promise promise = new Promise(this);
+    inFlight++;
+    workers.execute(() -> {
+      Object result;
+      try {
+        result = work.call();
+      } catch (Exception e) {
+        String message = e.getMessage() == null ? e.toString() : e.getMessage();
+        completions.add(() -> {
+          inFlight--;
+          promise.reject(message);
+        });
+        return;
+      }
+      completions.add(() -> {
+        inFlight--;
+        promise.resolve(result);
+      });
+    });
+    return promise;
+  }
+
+  Promise delay(long millis) {
+    Promise promise = new Promise(this);
+    inFlight++;
+    timers.schedule(() -> completions.add(() -> {
+      inFlight--;
+      promise.resolve(null);
+    }), millis, TimeUnit.MILLISECONDS);
+    return promise;
+  }
+
+  // Queues a callback to run on the interpreter's thread.
+  void post(Runnable reaction) {
+    completions.add(reaction);
+  }
+
+  // Runs the loop until the promise settles and returns its value.
+  Object await(Promise promise) {
+    while (!promise.isSettled()) {
+      if (completions.isEmpty() && inFlight == 0) {
+        throw new NativeError("Awaited a promise that can never settle.");
+      }
+      runOne();
+    }
+    if (promise.error() != null) throw new NativeError(promise.error());
+    return promise.value();
+  }
+
+  // Runs until nothing is queued or in flight.
+  void drain() {
+    while (!completions.isEmpty() || inFlight > 0) {
+      runOne();
+    }
+  }
+
+  private void runOne() {
+    Waiter waiter = new Waiter();
+    while (true) {
+      try {
+        ForkJoinPool.managedBlock(waiter);
+        break;
+      } catch (InterruptedException e) {
+        // Nothing interrupts the interpreter's thread on purpose; keep
+        // waiting for the work already started.
+      }
+    }
+    waiter.next.run();
+  }
+
+  // Takes the next completion. A task awaiting on a worker of the task
+  // pool goes through ForkJoinPool.managedBlock(), so the pool can start
+  // a spare worker instead of losing one to the wait.
+  private final class Waiter implements ForkJoinPool.ManagedBlocker {
+    Runnable next;
+
+    @Override
+    public boolean block() throws InterruptedException {
+      if (next == null) next = completions.take();
+      return true;
+    }
+
+    @Override
+    public boolean isReleasable() {
+      if (next == null) next = completions.poll();
+      return next != null;
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.yadav.lox;
+
+// Runs programs that have already been compiled. A CompiledProgram
+// carries its own resolution, so an engine keeps nothing about a program
+// between runs, and one program can be handed to many engines.
+//
+// Engines are registered by name in Lox and picked with --engine=NAME.
+// The tree-walking Interpreter is the reference implementation: any
+// other engine has to match its stdout, stderr and exit code on the
+// conformance corpus (see com.yadav.tool.Conformance).
+interface ExecutionEngine {
+  void interpret(CompiledProgram program);
+}
@@ -1,139 +1,466 @@
 package com.yadav.lox;
 
-import java.util.List;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import com.yadav.lox.Expr.Assign;
 import com.yadav.lox.Expr.Call;
 import com.yadav.lox.Stmt.Function;
 import com.yadav.lox.Stmt.While;
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-  public Environment globals = new Environment();
-  private Environment environment = globals;
-  private final Map<Expr, Integer> locals = new HashMap<>();
-
-  Interpreter() {
-    globals.define("clock", new LoxCallable() {
-      @Override
-      public int arity() { return 0; }
+class Interpreter implements ExecutionEngine, Expr.Visitor<Object>, Stmt.Visitor<Completion> {
+  // Each Lox call nests several Java frames, so recursion would be
+  // bounded by the JVM thread stack rather than the heap. Once a stack
+  // segment holds this many calls, the next call continues on another
+  // thread with a large stack (a StackSegment) while the current thread
+  // waits for it. The first segment is whatever thread started the
+  // interpreter, so it is kept short.
+  private static final int FIRST_SEGMENT_CALLS = 256;
+  private static final int SEGMENT_CALLS = 8192;
+
+  private final int maxCallDepth;
+  private final int memoCapacity;
+  private final boolean stats;
+  private final boolean parallelLoops;
+  private final OutputSink output;
+  private final ErrorReporter errors;
+  private EventLoop eventLoop;
+  private int callDepth = 0;
+  private int segmentLimit = FIRST_SEGMENT_CALLS;
+  // The segment threads of this interpreter, one per depth band, kept so
+  // that calls crossing a band boundary again don't start a new thread.
+  private List<StackSegment> segments;
+  private int activeSegments = 0;
+
+  public final Environment globals;
+  private Environment environment;
+  private Object returnValue;
+  private Unit unit;
+  private Map<Stmt.Import, LoxModule> imports = Map.of();
+  private final Set<LoxModule> importedModules = new HashSet<>();
+  private LoxFunction tailCallee;
+  private Environment tailFrame;
+  private Object tailMemoKey = MemoCache.MISS;
+  private final Map<Stmt.Function, MemoCache> memoCaches;
+  private final TaskGroup tasks;
+
+  // A compiled unit, the program or a module, as this interpreter runs it.
+  // The resolution is shared with every other interpreter running the
+  // unit; the inline caches of its property accesses are this
+  // interpreter's own, and its tasks'. Like the environment, the current
+  // unit is swapped when a function from another unit is called.
+  static final class Unit {
+    // Tasks fill in caches concurrently; the release and acquire make
+    // sure a cache is seen fully built.
+    private static final VarHandle CACHES = MethodHandles.arrayElementVarHandle(PropertyCache[].class);
+
+    final Map<Expr, Integer> locals;
+    final Set<Expr.Call> tailCalls;
+    final Resolution resolution;
+    private final PropertyCache[] caches;
+
+    Unit(Resolution resolution) {
+      this.locals = resolution.locals;
+      this.tailCalls = resolution.tailCalls;
+      this.resolution = resolution;
+      this.caches = new PropertyCache[resolution.sites];
+    }
 
-      @Override
-      public Object call(Interpreter interpreter, List<Object> args) {
-        return (double)System.currentTimeMillis() / 1000.0;
+    // Created the first time the site runs. Two tasks racing to create
+    // one just leaves one of them unused.
+    PropertyCache cache(int site) {
+      PropertyCache cache = (PropertyCache)CACHES.getAcquire(caches, site);
+      if (cache == null) {
+        cache = new PropertyCache();
+        CACHES.setRelease(caches, site, cache);
       }
+      return cache;
+    }
+  }
 
-      @Override
-      public String toString() {
-        return "<native fn>";
-      }
-    });
+  Interpreter(Options options) {
+    maxCallDepth = options.maxCallDepth;
+    memoCapacity = options.memoCapacity;
+    stats = options.stats;
+    parallelLoops = options.parallelLoops;
+    output = options.output;
+    errors = options.errors;
+    globals = new Environment();
+    // Every task starts out in the globals.
+    globals.share();
+    environment = globals;
+    memoCaches = new ConcurrentHashMap<>();
+    tasks = new TaskGroup();
+
+    NativeFunction.defineAll(globals, Natives.class);
+    NativeFunction.defineAll(globals, AsyncNatives.class);
+    NativeFunction.defineAll(globals, TaskNatives.class);
   }
 
-  void interpret(List<Stmt> statements) {
-    try {
-      for (Stmt statement : statements) {
-        execute(statement);
+  // An interpreter for a task spawned by this one. It has its own call
+  // stack and event loop, and shares everything else.
+  private Interpreter(Interpreter spawner) {
+    maxCallDepth = spawner.maxCallDepth;
+    memoCapacity = spawner.memoCapacity;
+    stats = false;
+    parallelLoops = spawner.parallelLoops;
+    output = spawner.output;
+    errors = spawner.errors;
+    globals = spawner.globals;
+    environment = globals;
+    imports = spawner.imports;
+    memoCaches = spawner.memoCaches;
+    tasks = spawner.tasks;
+  }
+
+  Interpreter forTask() {
+    return new Interpreter(this);
+  }
+
+  // Runs a spawned function, and whatever it started asynchronously, to
+  // completion.
+  Object runTask(LoxCallable function) {
+    Object result = function.call0(this);
+    drainEvents();
+    return result;
+  }
+
+  // Runs whatever was started asynchronously to completion.
+  void drainEvents() {
+    if (eventLoop != null) eventLoop.drain();
+  }
+
+  TaskGroup tasks() {
+    return tasks;
+  }
+
+  OutputSink output() {
+    return output;
+  }
+
+  // Created the first time a script starts something asynchronous.
+  EventLoop eventLoop() {
+    if (eventLoop == null) eventLoop = new EventLoop();
+    return eventLoop;
+  }
+
+  @Override
+  public void interpret(CompiledProgram program) {
+    if (memoCapacity > 0) {
+      for (Stmt.Function function : program.pureFunctions) {
+        memoCaches.put(function, new MemoCache(function.name.lexeme, memoCapacity));
       }
+    }
+
+    imports = program.imports;
+    try {
+      executeBlock(program.statements, globals, new Unit(program.resolution));
+
+      // Whatever the script started still finishes, callbacks and tasks
+      // included.
+      if (eventLoop != null) eventLoop.drain();
+      RuntimeError unjoined = tasks.awaitAll();
+      if (unjoined != null) throw unjoined;
     } catch (RuntimeError error) {
-      Lox.runtimeError(error);
+      errors.runtimeError(error);
+    } catch (NativeError error) {
+      // Callbacks are called like any other function, so these only get
+      // here from outside a call, where there's no line to report.
+      errors.runtimeError(error.getMessage());
+    } catch (StackOverflowError error) {
+      errors.runtimeError("Stack overflow.");
     }
+
+    if (stats) printStats();
+  }
+
+  private void printStats() {
+    output.flush();
+    for (MemoCache cache : memoCaches.values()) {
+      errors.stream().println(cache);
+    }
+    errors.stream().println(LoxString.table);
   }
 
   private String stringify(Object object) {
     if (object == null) return "nil";
 
-    if (object instanceof Double) {
-      String text = object.toString();
-      if (text.endsWith(".0")) {
-        text = text.substring(0, text.length() - 2);
-      }
-      return text;
+    if (object instanceof Double) return NumberFormatter.format((double)object);
+
+    if (object instanceof LoxArray || object instanceof LoxMap) {
+      return stringify(object, new IdentityHashMap<>());
     }
     return object.toString();
   }
 
-  private void execute(Stmt statement) {
-    statement.accept(this);
+  // Open holds the containers being printed, so that one that contains
+  // itself, directly or through others, prints as [...] or {...} instead
+  // of forever.
+  private String stringify(Object object, Map<Object, Boolean> open) {
+    if (object instanceof LoxArray) {
+      if (open.containsKey(object)) return "[...]";
+      open.put(object, Boolean.TRUE);
+      LoxArray array = (LoxArray)object;
+      StringBuilder builder = new StringBuilder("[");
+      for (int i = 0; i < array.size(); i++) {
+        if (i > 0) builder.append(", ");
+        builder.append(stringify(array.get(i), open));
+      }
+      open.remove(object);
+      return builder.append("]").toString();
+    }
+
+    if (object instanceof LoxMap) {
+      if (open.containsKey(object)) return "{...}";
+      open.put(object, Boolean.TRUE);
+      Object[] entries = ((LoxMap)object).entries();
+      StringBuilder builder = new StringBuilder("{");
+      for (int i = 0; i < entries.length; i += 2) {
+        if (i > 0) builder.append(", ");
+        builder.append(stringify(entries[i], open));
+        builder.append(": ");
+        builder.append(stringify(entries[i + 1], open));
+      }
+      open.remove(object);
+      return builder.append("}").toString();
+    }
+    return stringify(object);
+  }
+
+  private Completion execute(Stmt statement) {
+    return statement.accept(this);
   }
 
   @Override
-  public Void visitBlockStmt(Stmt.Block stmt) {
-    executeBlock(stmt.statements, new Environment(environment));
-    return null;
+  public Completion visitBlockStmt(Stmt.Block stmt) {
+    return executeBlock(stmt.statements, new Environment(environment));
   }
 
   @Override
-  public Void visitClassStmt(Stmt.Class stmt) {
+  public Completion visitClassStmt(Stmt.Class stmt) {
+    Object superclass = null;
+    if (stmt.superclass != null) {
+      superclass = evaluate(stmt.superclass);
+      if (!(superclass instanceof LoxClass)) {
+        throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
+      }
+    }
+
     environment.define(stmt.name.lexeme, null);
-    LoxClass klass = new LoxClass(stmt.name.lexeme);
+
+    Environment closure = environment;
+    Map<String, LoxFunction> methods = new HashMap<>();
+    if (superclass != null) {
+      closure = new Environment(environment);
+      closure.define("super", superclass);
+      methods.putAll(((LoxClass)superclass).methods());
+    }
+
+    for (Stmt.Function method : stmt.methods) {
+      boolean isInitializer = method.name.lexeme.equals("init");
+      methods.put(method.name.lexeme, new LoxFunction(method, closure, unit, null, isInitializer));
+    }
+
+    LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass)superclass, methods);
     environment.assign(stmt.name, klass);
-    return null;
+    return Completion.NORMAL;
   }
 
-  void executeBlock(List<Stmt> statements, Environment environment) {
+  Completion executeBlock(List<Stmt> statements, Environment environment) {
     Environment previous = this.environment;
 
     try {
       this.environment = environment;
       for (Stmt statement : statements) {
-        execute(statement);
+        Completion completion = execute(statement);
+        if (completion != Completion.NORMAL) return completion;
       }
+      return Completion.NORMAL;
     } finally {
       this.environment = previous;
     }
   }
 
+  // Runs code from another unit, whose resolution is used until it's done.
+  Completion executeBlock(List<Stmt> statements, Environment environment, Unit unit) {
+    Unit previous = this.unit;
+
+    try {
+      this.unit = unit;
+      return executeBlock(statements, environment);
+    } finally {
+      this.unit = previous;
+    }
+  }
+
+  // Hands the value of the last executed 'return' to the caller that
+  // received Completion.RETURN, dropping the interpreter's reference.
+  Object takeReturnValue() {
+    Object value = returnValue;
+    returnValue = null;
+    return value;
+  }
+
+  // The function and bound frame of a pending tail call, collected by
+  // the LoxFunction trampoline after Completion.TAIL_CALL.
+  LoxFunction takeTailCallee() {
+    LoxFunction callee = tailCallee;
+    tailCallee = null;
+    return callee;
+  }
+
+  Environment takeTailFrame() {
+    Environment frame = tailFrame;
+    tailFrame = null;
+    return frame;
+  }
+
+  // The memo key of a tail call to a memoized function that missed its
+  // cache, or MISS.
+  Object takeTailMemoKey() {
+    Object key = tailMemoKey;
+    tailMemoKey = MemoCache.MISS;
+    return key;
+  }
+
   @Override
-  public Void visitExpressionStmt(Stmt.Expression stmt) {
+  public Completion visitExpressionStmt(Stmt.Expression stmt) {
     evaluate(stmt.expression);
-    return null;
+    return Completion.NORMAL;
   }
 
 
   @Override
-  public Void visitFunctionStmt(Function stmt) {
-    LoxFunction function = new LoxFunction(stmt, environment);
+  public Completion visitFunctionStmt(Function stmt) {
+    LoxFunction function = new LoxFunction(stmt, environment, unit, memoCaches.get(stmt));
     environment.define(stmt.name.lexeme, function);
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
-  public Void visitReturnStmt(Stmt.Return stmt) {
+  public Completion visitReturnStmt(Stmt.Return stmt) {
+    if (stmt.value instanceof Expr.Call && unit.tailCalls.contains(stmt.value)) {
+      Expr.Call call = (Expr.Call)stmt.value;
+      Object callee = evaluate(call.callee);
+
+      // Lox functions are invoked by the caller's trampoline so the
+      // current Java frames are unwound before the callee runs. The
+      // arguments are bound straight into the callee's new frame. A
+      // memoized callee is looked up first, and on a miss the trampoline
+      // caches the result the chain ends with.
+      if (callee instanceof LoxFunction && ((LoxFunction)callee).arity() == call.arguments.size()) {
+        LoxFunction function = (LoxFunction)callee;
+        Environment frame = function.newFrame();
+        if (function.isMemoized()) {
+          Object[] arguments = new Object[call.arguments.size()];
+          for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = evaluate(call.arguments.get(i));
+          }
+          Object key = LoxFunction.memoKey(arguments);
+          Object cached = function.memoized(key);
+          if (cached != MemoCache.MISS) {
+            returnValue = cached;
+            return Completion.RETURN;
+          }
+          for (int i = 0; i < arguments.length; i++) {
+            function.bind(frame, i, arguments[i]);
+          }
+          tailMemoKey = key;
+        } else {
+          for (int i = 0; i < call.arguments.size(); i++) {
+            function.bind(frame, i, evaluate(call.arguments.get(i)));
+          }
+        }
+
+        tailCallee = function;
+        tailFrame = frame;
+        return Completion.TAIL_CALL;
+      }
+
+      if (callee instanceof BoundMethod && !((BoundMethod)callee).method.isInitializer
+          && ((BoundMethod)callee).arity() == call.arguments.size()) {
+        BoundMethod bound = (BoundMethod)callee;
+        Environment frame = bound.method.newFrame(bound.receiver);
+        for (int i = 0; i < call.arguments.size(); i++) {
+          bound.method.bind(frame, i, evaluate(call.arguments.get(i)));
+        }
+
+        tailCallee = bound.method;
+        tailFrame = frame;
+        return Completion.TAIL_CALL;
+      }
+
+      returnValue = call(call, callee);
+      return Completion.RETURN;
+    }
+
     Object value = null;
     if (stmt.value != null) value = evaluate(stmt.value);
 
-    throw new Return(value);
+    returnValue = value;
+    return Completion.RETURN;
   }
 
   @Override
-  public Void visitIfStmt(Stmt.If stmt) {
+  public Completion visitIfStmt(Stmt.If stmt) {
     if (isTruthy(evaluate(stmt.condition))) {
-      execute(stmt.thenBranch);
+      return execute(stmt.thenBranch);
     } else if (stmt.elseBranch != null) {
-      execute(stmt.elseBranch);
+      return execute(stmt.elseBranch);
+    }
+    return Completion.NORMAL;
+  }
+
+  // A module runs the first time it is imported, at the top level, so
+  // whatever it declares ends up in the globals it shares with every
+  // other module.
+  @Override
+  public Completion visitImportStmt(Stmt.Import stmt) {
+    LoxModule module = imports.get(stmt);
+    if (importedModules.add(module)) {
+      executeBlock(module.statements, globals, new Unit(module.resolution));
     }
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
-  public Void visitPrintStmt(Stmt.Print stmt) {
+  public Completion visitPrintStmt(Stmt.Print stmt) {
     Object value = evaluate(stmt.expression);
-    System.out.println(stringify(value));
-    return null;
+    // Holding the sink's lock keeps the line whole when tasks print.
+    if (value instanceof Double) {
+      synchronized (output) {
+        output.print((double)value);
+        output.newline();
+      }
+    } else {
+      String text = stringify(value);
+      synchronized (output) {
+        output.print(text);
+        output.newline();
+      }
+    }
+    return Completion.NORMAL;
   }
 
   @Override
-  public Void visitVarStmt(Stmt.Var stmt) {
+  public Completion visitVarStmt(Stmt.Var stmt) {
     Object value = null;
     if (stmt.initializer != null) {
       value = evaluate(stmt.initializer);
     }
 
     environment.define(stmt.name.lexeme, value);
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
@@ -163,16 +490,39 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     Object value = evaluate(expr.value);
-    ((LoxInstance)object).set(expr.name, value);
+    LoxInstance instance = (LoxInstance)object;
+    Shape shape = instance.shape();
+
+    PropertyCache cache = unit.cache(expr.site);
+    PropertyCache.Entry entry = cache.lookup(shape);
+    if (entry == null) {
+      int slot = shape.slot(expr.name.lexeme);
+      if (slot >= 0) {
+        entry = new PropertyCache.Entry(shape, slot, null);
+      } else {
+        Shape next = shape.with(expr.name.lexeme);
+        entry = new PropertyCache.Entry(shape, next.size() - 1, next);
+      }
+      cache.add(entry);
+    }
+
+    if (entry.transition != null) instance.transition(entry.transition);
+    instance.setField(entry.slot, value);
     return value;
   }
 
   @Override
-  public Void visitWhileStmt(While stmt) {
+  public Completion visitWhileStmt(While stmt) {
+    if (parallelLoops) {
+      Optional<ReductionLoop> reduction = unit.resolution.reductionLoop(stmt);
+      if (reduction.isPresent() && reduction.get().run(this)) return Completion.NORMAL;
+    }
+
     while (isTruthy(evaluate(stmt.condition))) {
-      execute(stmt.body);
+      Completion completion = execute(stmt.body);
+      if (completion != Completion.NORMAL) return completion;
     }
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
@@ -197,42 +547,39 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitBinaryExpr(Expr.Binary expr) {
-    Object left = evaluate(expr.left);
-    Object right = evaluate(expr.right);
-    
     switch (expr.operator.type) {
       case GREATER:
-        checkNumberOperands(expr.operator, left, right);
-        return (double)left > (double)right;
+        return evaluateDouble(expr.left, expr.operator) > evaluateDouble(expr.right, expr.operator);
       case GREATER_EQUAL:
-        checkNumberOperands(expr.operator, left, right);
-        return (double)left >= (double)right;
+        return evaluateDouble(expr.left, expr.operator) >= evaluateDouble(expr.right, expr.operator);
       case LESS:
-        checkNumberOperands(expr.operator, left, right);
-        return (double)left < (double)right;
+        return evaluateDouble(expr.left, expr.operator) < evaluateDouble(expr.right, expr.operator);
       case LESS_EQUAL:
-        checkNumberOperands(expr.operator, left, right);
-        return (double)left <= (double)right;
+        return evaluateDouble(expr.left, expr.operator) <= evaluateDouble(expr.right, expr.operator);
+      case MINUS:
+      case SLASH:
+      case STAR:
+        return evaluateArithmetic(expr);
+      case PLUS:
+        if (isArithmetic(expr)) return evaluateArithmetic(expr);
+        break;
+    }
+
+    Object left = evaluate(expr.left);
+    Object right = evaluate(expr.right);
+    
+    switch (expr.operator.type) {
       case EQUAL_EQUAL:
         return isEqual(left, right);
       case BANG_EQUAL:
         return !isEqual(left, right);
-      case MINUS:
-        checkNumberOperands(expr.operator, left, right);
-        return (double)left - (double)right;
-      case SLASH:
-        checkNumberOperands(expr.operator, left, right);
-        return (double)left / (double)right;
-      case STAR:
-        checkNumberOperands(expr.operator, left, right);
-        return (double)left * (double)right;
       case PLUS:
         if (left instanceof Double && right instanceof Double) {
           return (double)left + (double)right;
         }
         
-        if (left instanceof String && right instanceof String) {
-          return (String)left + (String)right;
+        if (left instanceof LoxString && right instanceof LoxString) {
+          return ((LoxString)left).concat((LoxString)right);
         }
 
         throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings");
@@ -241,36 +588,312 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
   }
 
+  // Numeric operands are evaluated through evaluateDouble() so nested
+  // arithmetic like `sum + i * 2` only boxes the final result; the
+  // intermediate values stay primitive doubles.
+  private double evaluateDouble(Expr expr, Token operator) {
+    if (expr instanceof Expr.Literal) {
+      Object value = ((Expr.Literal)expr).value;
+      if (value instanceof Double) return (double)value;
+    } else if (expr instanceof Expr.Grouping) {
+      return evaluateDouble(((Expr.Grouping)expr).expression, operator);
+    } else if (isArithmetic(expr)) {
+      return evaluateArithmetic((Expr.Binary)expr);
+    } else if (expr instanceof Expr.Index) {
+      // Elements of a numeric array are read without boxing them.
+      Expr.Index get = (Expr.Index)expr;
+      Object object = evaluate(get.object);
+      if (object instanceof LoxMap) {
+        return checkNumber(operator, ((LoxMap)object).get(evaluate(get.index)));
+      }
+
+      LoxArray array = array(get.bracket, object);
+      int index = index(get.bracket, array, get.index);
+      if (array.isNumeric()) return array.number(index);
+      return checkNumber(operator, array.get(index));
+    }
+
+    return checkNumber(operator, evaluate(expr));
+  }
+
+  private double checkNumber(Token operator, Object value) {
+    if (operator.type == TokenType.PLUS) {
+      checkNumberOperand(operator, value, "Operands must be two numbers or two strings");
+    } else {
+      checkNumberOperand(operator, value, "Operands must be numbers.");
+    }
+    return (double)value;
+  }
+
+  private double evaluateArithmetic(Expr.Binary expr) {
+    double left = evaluateDouble(expr.left, expr.operator);
+    double right = evaluateDouble(expr.right, expr.operator);
+
+    switch (expr.operator.type) {
+      case PLUS: return left + right;
+      case MINUS: return left - right;
+      case SLASH: return left / right;
+      case STAR: return left * right;
+      default:
+        throw new RuntimeError(expr.operator, "Unknown arithmetic operator.");
+    }
+  }
+
+  // True when the expression can only produce a number. A '+' is only
+  // numeric when one of its operands is, otherwise it may be a string.
+  private boolean isArithmetic(Expr expr) {
+    if (expr instanceof Expr.Grouping) {
+      return isArithmetic(((Expr.Grouping)expr).expression);
+    }
+    if (!(expr instanceof Expr.Binary)) return false;
+
+    Expr.Binary binary = (Expr.Binary)expr;
+    switch (binary.operator.type) {
+      case MINUS:
+      case SLASH:
+      case STAR:
+        return true;
+      case PLUS:
+        return isArithmetic(binary.left) || isArithmetic(binary.right);
+      default:
+        return false;
+    }
+  }
+
   @Override
   public Object visitCallExpr(Call expr) {
-    Object callee = evaluate(expr.callee);
+    return call(expr, evaluate(expr.callee));
+  }
+
+  // Up to three arguments are passed straight through to the arity
+  // specialized LoxCallable entry points, so those calls don't allocate
+  // an argument array.
+  private Object call(Expr.Call expr, Object callee) {
+    List<Expr> arguments = expr.arguments;
+    Object a, b, c;
+
+    switch (arguments.size()) {
+      case 0:
+        return call(expr.paren, checkCall(expr, callee, 0), 0, null, null, null, null);
+      case 1:
+        a = evaluate(arguments.get(0));
+        return call(expr.paren, checkCall(expr, callee, 1), 1, a, null, null, null);
+      case 2:
+        a = evaluate(arguments.get(0));
+        b = evaluate(arguments.get(1));
+        return call(expr.paren, checkCall(expr, callee, 2), 2, a, b, null, null);
+      case 3:
+        a = evaluate(arguments.get(0));
+        b = evaluate(arguments.get(1));
+        c = evaluate(arguments.get(2));
+        return call(expr.paren, checkCall(expr, callee, 3), 3, a, b, c, null);
+      default:
+        Object[] args = new Object[arguments.size()];
+        for (int i = 0; i < args.length; i++) {
+          args[i] = evaluate(arguments.get(i));
+        }
+        return call(expr.paren, checkCall(expr, callee, args.length), args.length, null, null, null, args);
+    }
+  }
+
+  // Calls a function for a native, such as a promise's callback, the way
+  // a call expression would, with errors reported at the site.
+  Object callFrom(Token site, LoxCallable function) {
+    return call(site, function, 0, null, null, null, null);
+  }
+
+  Object callFrom(Token site, LoxCallable function, Object a) {
+    return call(site, function, 1, a, null, null, null);
+  }
+
+  private Object call(Token paren, LoxCallable function,
+                      int count, Object a, Object b, Object c, Object[] args) {
+    if (callDepth >= maxCallDepth) {
+      throw new RuntimeError(paren, "Stack overflow.");
+    }
+
+    callDepth++;
+    try {
+      if (callDepth > segmentLimit) {
+        return callOnNewSegment(() -> invoke(function, count, a, b, c, args));
+      }
+      return invoke(function, count, a, b, c, args);
+    } catch (NativeError error) {
+      throw new RuntimeError(paren, error.getMessage());
+    } catch (StackOverflowError error) {
+      throw new RuntimeError(paren, "Stack overflow.");
+    } finally {
+      callDepth--;
+    }
+  }
 
-    List<Object> args = new ArrayList<>();
-    for (Expr argument : expr.arguments) {
-      args.add(evaluate(argument));
+  private Object invoke(LoxCallable function,
+                        int count, Object a, Object b, Object c, Object[] args) {
+    switch (count) {
+      case 0: return function.call0(this);
+      case 1: return function.call1(this, a);
+      case 2: return function.call2(this, a, b);
+      case 3: return function.call3(this, a, b, c);
+      default: return function.callN(this, args);
     }
+  }
 
+  private Object callOnNewSegment(Supplier<Object> call) {
+    if (segments == null) segments = new ArrayList<>();
+    if (activeSegments == segments.size()) segments.add(null);
+    StackSegment segment = segments.get(activeSegments);
+    if (segment == null || !segment.claim()) {
+      try {
+        segment = new StackSegment();
+      } catch (OutOfMemoryError error) {
+        // No room for another thread's stack, so this is as deep as
+        // calls can go; call() reports it.
+        throw new StackOverflowError();
+      }
+      segment.claim();
+      segments.set(activeSegments, segment);
+    }
+
+    int previousLimit = segmentLimit;
+    segmentLimit = callDepth + SEGMENT_CALLS;
+    activeSegments++;
+    try {
+      return segment.run(call);
+    } finally {
+      activeSegments--;
+      segmentLimit = previousLimit;
+    }
+  }
+
+  private LoxCallable checkCall(Expr.Call expr, Object callee, int count) {
     if (!(callee instanceof LoxCallable)) {
       throw new RuntimeError(expr.paren, "Can only call functions and classes.");
     }
 
     LoxCallable function = (LoxCallable)callee;
-    if (args.size() != function.arity()) {
-      throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got " + args.size() + ".");
+    if (count != function.arity()) {
+      throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got " + count + ".");
     }
-    return function.call(this, args);
+    return function;
   }
 
   @Override
   public Object visitGetExpr(Expr.Get expr) {
     Object object = evaluate(expr.object);
     if (object instanceof LoxInstance) {
-      return ((LoxInstance) object).get(expr.name);
+      LoxInstance instance = (LoxInstance)object;
+      PropertyCache cache = unit.cache(expr.site);
+      PropertyCache.Entry entry = cache.lookup(instance.shape());
+      if (entry != null) {
+        if (entry.method != null) return new BoundMethod(instance, entry.method);
+        return instance.field(entry.slot);
+      }
+
+      // Fields shadow methods, so a method is only cached for shapes
+      // without a field of that name.
+      int slot = instance.shape().slot(expr.name.lexeme);
+      if (slot >= 0) {
+        cache.add(new PropertyCache.Entry(instance.shape(), slot, null));
+        return instance.field(slot);
+      }
+
+      LoxFunction method = instance.klass.findMethod(expr.name.lexeme);
+      if (method != null) {
+        cache.add(new PropertyCache.Entry(instance.shape(), -1, null, method));
+        return new BoundMethod(instance, method);
+      }
+      return instance.get(expr.name);
     }
 
+    if (object instanceof NativeObject) return ((NativeObject)object).get(expr.name);
+
     throw new RuntimeError(expr.name, "Only instances have properties.");
   }
 
+  @Override
+  public Object visitArrayExpr(Expr.Array expr) {
+    LoxArray array = new LoxArray(0);
+    for (Expr element : expr.elements) {
+      array.push(evaluate(element));
+    }
+    return array;
+  }
+
+  @Override
+  public Object visitIndexExpr(Expr.Index expr) {
+    Object object = evaluate(expr.object);
+    if (object instanceof LoxMap) {
+      return ((LoxMap)object).get(evaluate(expr.index));
+    }
+
+    LoxArray array = array(expr.bracket, object);
+    return array.get(index(expr.bracket, array, expr.index));
+  }
+
+  @Override
+  public Object visitIndexSetExpr(Expr.IndexSet expr) {
+    Object object = evaluate(expr.object);
+    if (object instanceof LoxMap) {
+      Object key = evaluate(expr.index);
+      Object value = evaluate(expr.value);
+      ((LoxMap)object).put(key, value);
+      return value;
+    }
+
+    LoxArray array = array(expr.bracket, object);
+    int index = index(expr.bracket, array, expr.index);
+    Object value = evaluate(expr.value);
+    array.set(index, value);
+    return value;
+  }
+
+  private LoxArray array(Token bracket, Object object) {
+    if (object instanceof LoxArray) return (LoxArray)object;
+    throw new RuntimeError(bracket, "Only arrays and maps can be indexed.");
+  }
+
+  private int index(Token bracket, LoxArray array, Expr expr) {
+    double index;
+    if (isArithmetic(expr)) {
+      index = evaluateDouble(expr, bracket);
+    } else {
+      Object value = evaluate(expr);
+      if (!(value instanceof Double)) {
+        throw new RuntimeError(bracket, "Array index must be an integer.");
+      }
+      index = (double)value;
+    }
+
+    if (index != Math.floor(index)) {
+      throw new RuntimeError(bracket, "Array index must be an integer.");
+    }
+    if (index < 0 || index >= array.size()) {
+      throw new RuntimeError(bracket, "Array index out of bounds.");
+    }
+    return (int)index;
+  }
+
+  @Override
+  public Object visitSuperExpr(Expr.Super expr) {
+    int distance = unit.locals.get(expr);
+    LoxClass superclass = (LoxClass)environment.getAt(distance, "super");
+
+    // 'this' is bound in the method's frame, one environment inside the
+    // class environment holding 'super'.
+    LoxInstance object = (LoxInstance)environment.getAt(distance - 1, "this");
+
+    LoxFunction method = superclass.findMethod(expr.method.lexeme);
+    if (method == null) {
+      throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
+    }
+    return new BoundMethod(object, method);
+  }
+
+  @Override
+  public Object visitThisExpr(Expr.This expr) {
+    return lookUpVariable(expr.keyword, expr);
+  }
+
   @Override
   public Object visitTernaryExpr(Expr.Ternary expr) {
     Object left = evaluate(expr.left);
@@ -291,7 +914,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   }
   
   private Object lookUpVariable(Token name, Expr expr) {
-    Integer distance = locals.get(expr);
+    Integer distance = unit.locals.get(expr);
     if (distance != null) {
       return environment.getAt(distance, name.lexeme);
     } else {
@@ -299,6 +922,20 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
   }
 
+  // Variable access for ReductionLoop, which resolves its own distances.
+  Object getVariable(Token name, Integer distance) {
+    if (distance != null) return environment.getAt(distance, name.lexeme);
+    return globals.get(name);
+  }
+
+  void setVariable(Token name, Integer distance, Object value) {
+    if (distance != null) {
+      environment.assignAt(distance, name, value);
+    } else {
+      globals.assign(name, value);
+    }
+  }
+
   private Object evaluate(Expr expr) {
     return expr.accept(this);
   }
@@ -309,29 +946,29 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     return true;
   }
 
+  // Identical references are always equal. That covers nil and, since
+  // literals are interned, the usual comparison of two string literals.
   private boolean isEqual(Object a, Object b) {
-    if (a == null && b == null) return true;
+    if (a == b) return true;
     if (a == null) return false;
 
     return a.equals(b);
   }
 
   private void checkNumberOperand(Token operator, Object operand) {
-    if (operand instanceof Double) return;
-    throw new RuntimeError(operator, "Operand must be a number.");
+    checkNumberOperand(operator, operand, "Operand must be a number.");
   }
 
-  private void checkNumberOperands(Token operator, Object left, Object right) {
-    if (left instanceof Double && right instanceof Double) return;
-    
-    throw new RuntimeError(operator, "Operands must be numbers.");
+  private void checkNumberOperand(Token operator, Object operand, String message) {
+    if (operand instanceof Double) return;
+    throw new RuntimeError(operator, message);
   }
 
   @Override
   public Object visitAssignExpr(Assign expr) {
     Object value = evaluate(expr.value);
 
-    Integer distance = locals.get(expr);
+    Integer distance = unit.locals.get(expr);
     if (distance != null) {
       environment.assignAt(distance, expr.name, value);
     } else {
@@ -340,8 +977,4 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     return value;
   }
-
-  void resolve(Expr expr, int depth) {
-    locals.put(expr, depth);
-  }
 }
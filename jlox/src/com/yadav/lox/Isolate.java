@@ -0,0 +1,60 @@
+package com.yadav.lox;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+// One Lox runtime: an engine with its own globals, its own error state and
+// its own output. Isolates share nothing that can change except the
+// module cache, which is safe to share, so any number of them can run at
+// once on different threads. Each isolate is used by one thread at a time.
+class Isolate {
+  private final ExecutionEngine engine;
+  private final ModuleLoader modules;
+  private final OutputSink output;
+  private final ErrorReporter errors;
+
+  Isolate(Options options, ModuleLoader modules, OutputSink output, PrintStream err) {
+    this.modules = modules;
+    this.output = output;
+    this.errors = new ErrorReporter(err, output);
+
+    Options own = options.copy();
+    own.output = output;
+    own.errors = errors;
+    this.engine = Lox.newEngine(own);
+  }
+
+  ErrorReporter errors() {
+    return errors;
+  }
+
+  OutputSink output() {
+    return output;
+  }
+
+  // Compiles source for this isolate, reporting any errors to it.
+  // Returns null if there were errors. Imports are found relative to
+  // origin, the file the source came from, or to the working directory
+  // when it is null.
+  CompiledProgram compile(String source, Path origin) {
+    return CompiledProgram.compile(source, origin, modules, errors);
+  }
+
+  void run(String source, Path origin) {
+    CompiledProgram program = compile(source, origin);
+    if (program != null) run(program);
+  }
+
+  // Runs a program, which may have been compiled elsewhere and may be
+  // running in other isolates at the same time.
+  void run(CompiledProgram program) {
+    engine.interpret(program);
+  }
+
+  // The exit code for a script run in this isolate, following sysexits.
+  int exitCode() {
+    if (errors.hadError()) return 65;
+    if (errors.hadRuntimeError()) return 70;
+    return 0;
+  }
+}
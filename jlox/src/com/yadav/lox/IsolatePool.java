@@ -0,0 +1,97 @@
+package com.yadav.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Runs scripts concurrently, each in a fresh isolate with its output and
+// errors captured, and all of them sharing one module cache. This is how
+// one warm JVM serves many tenants' scripts. A script that runs many
+// times can be compiled once and the CompiledProgram submitted instead.
+//
+// Each script gets a virtual thread when the runtime has them. Without
+// them a script blocked in await() holds on to a platform thread, so the
+// scripts share a pool with one thread per core rather than a thread
+// each.
+class IsolatePool implements AutoCloseable {
+  // Captured output is held in memory anyway, so the sink in front of it
+  // only needs a small buffer.
+  private static final int CAPTURE_THRESHOLD = 4096;
+
+  static final class Result {
+    final int exitCode;
+    final String output;
+    final String errors;
+
+    Result(int exitCode, String output, String errors) {
+      this.exitCode = exitCode;
+      this.output = output;
+      this.errors = errors;
+    }
+  }
+
+  private final Options options;
+  private final ModuleLoader modules;
+  private final ExecutorService executor = Threads.virtualOr(() -> Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(), Threads.daemon("lox-isolate")));
+
+  IsolatePool(Options options) {
+    this(options, new ModuleLoader(options.modulePath));
+  }
+
+  IsolatePool(Options options, ModuleLoader modules) {
+    this.options = options.copy();
+    this.modules = modules;
+  }
+
+  // Runs source in an isolate of its own. Imports are found relative to
+  // origin, or to the working directory when it is null.
+  CompletableFuture<Result> submit(String source, Path origin) {
+    return CompletableFuture.supplyAsync(() -> run(isolate -> isolate.run(source, origin)), executor);
+  }
+
+  CompletableFuture<Result> submit(CompiledProgram program) {
+    return CompletableFuture.supplyAsync(() -> run(isolate -> isolate.run(program)), executor);
+  }
+
+  // Compiles a program for submit(), with this pool's module cache.
+  // Returns null if there were errors, which go to the given reporter.
+  CompiledProgram compile(String source, Path origin, ErrorReporter errors) {
+    return CompiledProgram.compile(source, origin, modules, errors);
+  }
+
+  private Result run(Consumer<Isolate> script) {
+    Charset charset = Charset.defaultCharset();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    OutputSink output = new BufferedSink(new PrintStream(out, false, charset), CAPTURE_THRESHOLD);
+
+    Isolate isolate = new Isolate(options, modules, output, new PrintStream(err, true, charset));
+    try {
+      script.accept(isolate);
+    } finally {
+      output.flush();
+    }
+    return new Result(isolate.exitCode(), out.toString(charset), err.toString(charset));
+  }
+
+  // Waits for everything submitted so far to finish.
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        // Keep waiting; scripts can run for as long as they like.
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
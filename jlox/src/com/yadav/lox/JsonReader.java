@@ -0,0 +1,391 @@
+package com.yadav.lox;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// A pull parser over JSON text. next() steps through the document one
+// event at a time, keeping only a stack of the containers it's inside,
+// so a huge document, or a stream of several top-level values, is read
+// in constant memory. read() materializes the next whole value instead:
+// objects as maps, arrays as arrays. Scripts usually mix the two, using
+// next() to enter an outer array and read() for each record in it.
+class JsonReader implements NativeObject {
+  // Event names, as scripts see them from next().
+  static final LoxString START_OBJECT = LoxString.intern("startObject");
+  static final LoxString END_OBJECT = LoxString.intern("endObject");
+  static final LoxString START_ARRAY = LoxString.intern("startArray");
+  static final LoxString END_ARRAY = LoxString.intern("endArray");
+  static final LoxString KEY = LoxString.intern("key");
+  static final LoxString VALUE = LoxString.intern("value");
+
+  // What the parser expects next inside each open container.
+  private static final byte ARRAY_FIRST = 0;
+  private static final byte ARRAY_NEXT = 1;
+  private static final byte OBJECT_FIRST = 2;
+  private static final byte OBJECT_NEXT = 3;
+  private static final byte OBJECT_VALUE = 4;
+  // hasNext() already consumed the comma after the last element.
+  private static final byte ARRAY_AFTER_COMMA = 5;
+  private static final byte OBJECT_AFTER_COMMA = 6;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Reader input;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int position = 0;
+  private int limit = 0;
+  // Characters consumed before the current buffer, for error messages.
+  private long offset = 0;
+  private boolean closed = false;
+
+  private byte[] stack = new byte[32];
+  private int depth = 0;
+
+  // The key, string, number, boolean or nil of the last event.
+  private Object value;
+  private final StringBuilder scratch = new StringBuilder();
+
+  JsonReader(Reader input) {
+    this.input = input;
+  }
+
+  // Returns the next event, or null at the end of the input.
+  LoxString next() {
+    value = null;
+    int c = skipWhitespace();
+
+    if (depth == 0) {
+      if (c < 0) return null;
+      return startValue(c);
+    }
+
+    switch (stack[depth - 1]) {
+      case ARRAY_FIRST:
+        if (c == ']') return close(END_ARRAY);
+        stack[depth - 1] = ARRAY_NEXT;
+        return startValue(c);
+
+      case ARRAY_NEXT:
+        if (c == ']') return close(END_ARRAY);
+        expect(c, ',');
+        return startValue(skipWhitespace());
+
+      case OBJECT_FIRST:
+        if (c == '}') return close(END_OBJECT);
+        return key(c);
+
+      case OBJECT_NEXT:
+        if (c == '}') return close(END_OBJECT);
+        expect(c, ',');
+        return key(skipWhitespace());
+
+      case ARRAY_AFTER_COMMA:
+        stack[depth - 1] = ARRAY_NEXT;
+        return startValue(c);
+
+      case OBJECT_AFTER_COMMA:
+        return key(c);
+
+      default:
+        stack[depth - 1] = OBJECT_NEXT;
+        return startValue(c);
+    }
+  }
+
+  // True when the container being read has another element, or, at the
+  // top level, when there's another value before the end of the input.
+  boolean hasNext() {
+    int c = skipWhitespaceBefore();
+    if (c == ',' && depth > 0) {
+      byte state = stack[depth - 1];
+      if (state == ARRAY_NEXT || state == OBJECT_NEXT) {
+        position++;
+        stack[depth - 1] = state == ARRAY_NEXT ? ARRAY_AFTER_COMMA : OBJECT_AFTER_COMMA;
+        c = skipWhitespaceBefore();
+      }
+    }
+    return c >= 0 && c != ']' && c != '}';
+  }
+
+  // Parses the next complete value.
+  Object read() {
+    LoxString event = next();
+    if (event == null || event == END_ARRAY || event == END_OBJECT) {
+      throw error("Expected a value.");
+    }
+    return materialize(event);
+  }
+
+  Object value() {
+    return value;
+  }
+
+  // Steps over the next complete value without building it.
+  void skip() {
+    LoxString event = next();
+    if (event == null || event == END_ARRAY || event == END_OBJECT) {
+      throw error("Expected a value.");
+    }
+    if (event == KEY) event = next();
+    int target = depth - 1;
+    if (event == START_ARRAY || event == START_OBJECT) {
+      while (depth > target) next();
+    }
+  }
+
+  private Object materialize(LoxString event) {
+    if (event == START_ARRAY) {
+      LoxArray array = new LoxArray(0);
+      for (LoxString element = next(); element != END_ARRAY; element = next()) {
+        array.push(materialize(element));
+      }
+      return array;
+    }
+
+    if (event == START_OBJECT) {
+      LoxMap map = new LoxMap();
+      for (LoxString key = next(); key != END_OBJECT; key = next()) {
+        Object name = value;
+        map.put(name, materialize(next()));
+      }
+      return map;
+    }
+
+    if (event == KEY) return materialize(next());
+    return value;
+  }
+
+  private LoxString startValue(int c) {
+    switch (c) {
+      case '{':
+        push(OBJECT_FIRST);
+        return START_OBJECT;
+      case '[':
+        push(ARRAY_FIRST);
+        return START_ARRAY;
+      case '"':
+        value = new LoxString(readString());
+        return VALUE;
+      case 't':
+        literal("rue");
+        value = true;
+        return VALUE;
+      case 'f':
+        literal("alse");
+        value = false;
+        return VALUE;
+      case 'n':
+        literal("ull");
+        value = null;
+        return VALUE;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          value = readNumber(c);
+          return VALUE;
+        }
+        throw error(c < 0 ? "Unexpected end of input." : "Unexpected character '" + (char)c + "'.");
+    }
+  }
+
+  // Object keys repeat from one record to the next, so they're interned:
+  // a script's m["id"] then finds them by identity.
+  private LoxString key(int c) {
+    expect(c, '"');
+    value = LoxString.intern(readString());
+    expect(skipWhitespace(), ':');
+    stack[depth - 1] = OBJECT_VALUE;
+    return KEY;
+  }
+
+  private LoxString close(LoxString event) {
+    depth--;
+    return event;
+  }
+
+  private void push(byte state) {
+    if (depth == stack.length) {
+      byte[] grown = new byte[depth * 2];
+      System.arraycopy(stack, 0, grown, 0, depth);
+      stack = grown;
+    }
+    stack[depth++] = state;
+  }
+
+  private String readString() {
+    scratch.setLength(0);
+    while (true) {
+      int c = read1();
+      if (c < 0) throw error("Unterminated string.");
+      if (c == '"') return scratch.toString();
+      if (c != '\\') {
+        scratch.append((char)c);
+        continue;
+      }
+
+      c = read1();
+      switch (c) {
+        case '"': scratch.append('"'); break;
+        case '\\': scratch.append('\\'); break;
+        case '/': scratch.append('/'); break;
+        case 'b': scratch.append('\b'); break;
+        case 'f': scratch.append('\f'); break;
+        case 'n': scratch.append('\n'); break;
+        case 'r': scratch.append('\r'); break;
+        case 't': scratch.append('\t'); break;
+        case 'u': {
+          int code = 0;
+          for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read1(), 16);
+            if (digit < 0) throw error("Invalid \\u escape.");
+            code = code * 16 + digit;
+          }
+          scratch.append((char)code);
+          break;
+        }
+        default:
+          throw error("Invalid escape.");
+      }
+    }
+  }
+
+  private double readNumber(int first) {
+    scratch.setLength(0);
+    scratch.append((char)first);
+    while (true) {
+      int c = peek();
+      if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+        scratch.append((char)c);
+        position++;
+      } else {
+        break;
+      }
+    }
+
+    try {
+      return Double.parseDouble(scratch.toString());
+    } catch (NumberFormatException e) {
+      throw error("Invalid number '" + scratch + "'.");
+    }
+  }
+
+  private void literal(String rest) {
+    for (int i = 0; i < rest.length(); i++) {
+      if (read1() != rest.charAt(i)) throw error("Invalid literal.");
+    }
+  }
+
+  private void expect(int c, char expected) {
+    if (c != expected) {
+      throw error(c < 0 ? "Unexpected end of input." : "Expected '" + expected + "'.");
+    }
+  }
+
+  private int skipWhitespace() {
+    while (true) {
+      int c = read1();
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+    }
+  }
+
+  // Skips whitespace and returns the character after it, unconsumed.
+  private int skipWhitespaceBefore() {
+    while (true) {
+      int c = peek();
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+      position++;
+    }
+  }
+
+  private int peek() {
+    if (position == limit && !fill()) return -1;
+    return buffer[position];
+  }
+
+  private int read1() {
+    if (position == limit && !fill()) return -1;
+    return buffer[position++];
+  }
+
+  private boolean fill() {
+    if (closed) throw new NativeError("JSON reader is closed.");
+    try {
+      offset += limit;
+      position = 0;
+      limit = Math.max(0, input.read(buffer, 0, buffer.length));
+      return limit > 0;
+    } catch (IOException e) {
+      throw new NativeError("Could not read JSON: " + e.getMessage());
+    }
+  }
+
+  private NativeError error(String message) {
+    return new NativeError("Invalid JSON at character " + (offset + position) + ": " + message);
+  }
+
+  void close() {
+    closed = true;
+    try {
+      input.close();
+    } catch (IOException e) {
+      throw new NativeError("Could not close JSON input: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public Object get(Token name) {
+    switch (name.lexeme) {
+      case "next": return new Method(name);
+      case "hasNext": return new Method(name);
+      case "value": return new Method(name);
+      case "read": return new Method(name);
+      case "skip": return new Method(name);
+      case "close": return new Method(name);
+      default:
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+  }
+
+  private class Method implements LoxCallable {
+    private final Token name;
+
+    Method(Token name) {
+      this.name = name;
+    }
+
+    @Override
+    public int arity() {
+      return 0;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+      switch (name.lexeme) {
+        case "next": return next();
+        case "hasNext": return hasNext();
+        case "value": return value();
+        case "read": return read();
+        case "skip":
+          skip();
+          return null;
+        default:
+          close();
+          return null;
+      }
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+      return call0(interpreter);
+    }
+
+    @Override
+    public String toString() {
+      return "<native fn>";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "<json reader>";
+  }
+}
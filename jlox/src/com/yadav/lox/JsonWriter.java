@@ -0,0 +1,150 @@
+package com.yadav.lox;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Serializes Lox values as JSON straight into an OutputSink, piece by
+// piece, without building a string for each nested value first.
+// Instances become objects with their fields in the order they were
+// added, maps become objects, arrays become arrays.
+class JsonWriter {
+  private final OutputSink out;
+  // Containers being written, to catch a value that contains itself.
+  private final Map<Object, Boolean> open = new IdentityHashMap<>();
+
+  JsonWriter(OutputSink out) {
+    this.out = out;
+  }
+
+  static LoxString toJson(Object value) {
+    StringSink sink = new StringSink();
+    new JsonWriter(sink).write(value);
+    return new LoxString(sink.builder.toString());
+  }
+
+  void write(Object value) {
+    if (value == null) {
+      out.print("null");
+    } else if (value instanceof Boolean) {
+      out.print((boolean)value ? "true" : "false");
+    } else if (value instanceof Double) {
+      double number = (double)value;
+      if (Double.isNaN(number) || Double.isInfinite(number)) {
+        throw new NativeError("Can't write " + NumberFormatter.format(number) + " as JSON.");
+      }
+      out.print(number);
+    } else if (value instanceof LoxString) {
+      writeString(value.toString());
+    } else if (value instanceof LoxArray) {
+      enter(value);
+      LoxArray array = (LoxArray)value;
+      out.print("[");
+      for (int i = 0; i < array.size(); i++) {
+        if (i > 0) out.print(",");
+        write(array.get(i));
+      }
+      out.print("]");
+      open.remove(value);
+    } else if (value instanceof LoxMap) {
+      enter(value);
+      Object[] entries = ((LoxMap)value).entries();
+      out.print("{");
+      for (int i = 0; i < entries.length; i += 2) {
+        if (i > 0) out.print(",");
+        writeKey(entries[i]);
+        write(entries[i + 1]);
+      }
+      out.print("}");
+      open.remove(value);
+    } else if (value instanceof LoxInstance) {
+      enter(value);
+      LoxInstance instance = (LoxInstance)value;
+      String[] names = instance.shape().names();
+      out.print("{");
+      for (int slot = 0; slot < names.length; slot++) {
+        if (slot > 0) out.print(",");
+        writeString(names[slot]);
+        out.print(":");
+        write(instance.field(slot));
+      }
+      out.print("}");
+      open.remove(value);
+    } else {
+      throw new NativeError("Can't write " + value + " as JSON.");
+    }
+  }
+
+  private void enter(Object container) {
+    if (open.put(container, Boolean.TRUE) != null) {
+      throw new NativeError("Can't write a value that contains itself as JSON.");
+    }
+  }
+
+  // JSON keys are strings; numbers and other scalars are written the way
+  // Lox prints them.
+  private void writeKey(Object key) {
+    if (key instanceof LoxString) {
+      writeString(key.toString());
+    } else if (key instanceof Double) {
+      writeString(NumberFormatter.format((double)key));
+    } else if (key == null || key instanceof Boolean) {
+      writeString(String.valueOf(key == null ? "nil" : key));
+    } else {
+      throw new NativeError("Can't write a map key of " + key + " as JSON.");
+    }
+    out.print(":");
+  }
+
+  // Copies runs of plain characters in one piece and escapes the rest.
+  private void writeString(String text) {
+    out.print("\"");
+    int run = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c >= 0x20 && c != '"' && c != '\\') continue;
+
+      out.print(text, run, i);
+      switch (c) {
+        case '"': out.print("\\\""); break;
+        case '\\': out.print("\\\\"); break;
+        case '\n': out.print("\\n"); break;
+        case '\r': out.print("\\r"); break;
+        case '\t': out.print("\\t"); break;
+        case '\b': out.print("\\b"); break;
+        case '\f': out.print("\\f"); break;
+        default: out.print(String.format("\\u%04x", (int)c));
+      }
+      run = i + 1;
+    }
+    out.print(text, run, text.length());
+    out.print("\"");
+  }
+
+  private static class StringSink implements OutputSink {
+    final StringBuilder builder = new StringBuilder();
+
+    @Override
+    public void print(CharSequence text) {
+      builder.append(text);
+    }
+
+    @Override
+    public void print(CharSequence text, int start, int end) {
+      builder.append(text, start, end);
+    }
+
+    @Override
+    public void print(double number) {
+      NumberFormatter.append(builder, number);
+    }
+
+    @Override
+    public void newline() {
+      builder.append(System.lineSeparator());
+    }
+
+    @Override
+    public void flush() {
+    }
+  }
+}
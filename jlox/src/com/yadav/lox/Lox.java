@@ -1,95 +1,165 @@
 package com.yadav.lox;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public class Lox {
-  static boolean hadError = false;
-  static boolean hadRuntimeError = false;
+  private static final Map<String, Function<Options, ExecutionEngine>> engines = new LinkedHashMap<>();
 
-  private static final Interpreter interpreter = new Interpreter();
+  static {
+    engines.put("tree", Interpreter::new);
+  }
+
+  private static final int DEFAULT_MEMO_CAPACITY = 4096;
 
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-        System.out.println("Usage: rlox [script]");
-        System.exit(64);
-    } else if (args.length == 1) {
-        runFile(args[0]);
-    } else {
-        runPrompt();
+    Options options = new Options();
+    boolean noMemoize = false;
+    for (String arg : args) {
+      if (arg.equals("--list-engines")) {
+        for (String name : engines.keySet()) System.out.println(name);
+        return;
+      } else if (arg.startsWith("--engine=")) {
+        options.engine = arg.substring("--engine=".length());
+      } else if (arg.startsWith("--max-call-depth=")) {
+        options.maxCallDepth = parseCount(arg);
+      } else if (arg.equals("--memoize")) {
+        options.memoCapacity = DEFAULT_MEMO_CAPACITY;
+      } else if (arg.startsWith("--memoize=")) {
+        options.memoCapacity = parseCount(arg);
+      } else if (arg.equals("--no-memoize")) {
+        noMemoize = true;
+      } else if (arg.equals("--no-parallel-loops")) {
+        options.parallelLoops = false;
+      } else if (arg.equals("--async-output")) {
+        options.asyncOutput = true;
+      } else if (arg.startsWith("--module-path=")) {
+        for (String directory : arg.substring("--module-path=".length()).split(File.pathSeparator)) {
+          if (!directory.isEmpty()) options.modulePath.add(Paths.get(directory));
+        }
+      } else if (arg.startsWith("--isolates=")) {
+        options.isolates = parseCount(arg);
+      } else if (arg.equals("--stats")) {
+        options.stats = true;
+      } else if (arg.startsWith("--") || options.script != null) {
+        usage();
+      } else {
+        options.script = arg;
+      }
     }
-  }
 
-  private static void runFile(String path) throws IOException {
-    byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
+    // The purity analysis needs to see the whole program, which the
+    // prompt never has, and --no-memoize always wins.
+    if (noMemoize || options.script == null) options.memoCapacity = 0;
 
-    if (hadError) System.exit(65);
-    if (hadError) System.exit(70);
-  }
-
-  private static void runPrompt() throws IOException {
-    InputStreamReader input = new InputStreamReader(System.in);
-    BufferedReader reader = new BufferedReader(input);
+    if (!engines.containsKey(options.engine)) {
+      System.err.println("Unknown engine '" + options.engine + "'. Available: " + engines.keySet());
+      System.exit(64);
+    }
+    if (options.isolates > 1) {
+      if (options.script == null) usage();
+      runIsolates(options);
+      return;
+    }
 
-    for (;;) {
-        System.out.print("> ");
-        String line = reader.readLine();
-        if (line == null) break;
-        run(line);
-        hadError = false;
+    OutputSink output = options.asyncOutput ? new AsyncSink(System.out) : new BufferedSink(System.out);
+    Isolate isolate = new Isolate(options, new ModuleLoader(options.modulePath), output, System.err);
+
+    try {
+      if (options.script != null) {
+          runFile(isolate, options.script);
+      } else {
+          runPrompt(isolate);
+      }
+    } finally {
+      output.flush();
     }
   }
 
-  private static void run(String source) {
-    Scanner scanner = new Scanner(source);
+  static ExecutionEngine newEngine(Options options) {
+    return engines.get(options.engine).apply(options);
+  }
 
-    List<Token> tokens = scanner.scanTokens();
+  private static void usage() {
+    System.out.println("Usage: rlox [--engine=NAME] [--list-engines] [--max-call-depth=N]");
+    System.out.println("            [--memoize[=N] | --no-memoize] [--no-parallel-loops] [--async-output]");
+    System.out.println("            [--module-path=DIRS] [--isolates=N] [--stats] [script]");
+    System.exit(64);
+  }
 
-    // System.out.println(tokens);
-    
-    Parser parser = new Parser(tokens);
-    List<Stmt> statements = parser.parse();
-    
-    // Stop if there was a syntax error
-    if (hadError) return;
+  private static int parseCount(String option) {
+    try {
+      int count = Integer.parseInt(option.substring(option.indexOf('=') + 1));
+      if (count > 0) return count;
+    } catch (NumberFormatException e) {
+      // Fall through to the usage message.
+    }
+    usage();
+    return 0;
+  }
 
-    Resolver resolver = new Resolver(interpreter);
-    resolver.resolve(statements);
+  private static void runFile(Isolate isolate, String path) throws IOException {
+    Path file = Paths.get(path).toRealPath();
+    byte[] bytes = Files.readAllBytes(file);
+    isolate.run(new String(bytes, Charset.defaultCharset()), file);
 
-    // Stop if there was a resolution error
-    if (hadError) return;
-    
-    // System.out.println(new AstPrinter().print(expression));
-    interpreter.interpret(statements);
+    isolate.output().flush();
+    int exitCode = isolate.exitCode();
+    if (exitCode != 0) System.exit(exitCode);
   }
 
-  static void error(int line, String message) {
-    report(line, "", message);
-  }
+  // Compiles the script once and runs it in as many isolates at once as
+  // --isolates asks for, then prints what each one wrote, in order. Exits
+  // with the first failing isolate's code.
+  private static void runIsolates(Options options) throws IOException {
+    Path file = Paths.get(options.script).toRealPath();
+    String source = new String(Files.readAllBytes(file), Charset.defaultCharset());
+
+    List<CompletableFuture<IsolatePool.Result>> runs = new ArrayList<>();
+    try (IsolatePool pool = new IsolatePool(options)) {
+      BufferedSink output = new BufferedSink(System.out);
+      CompiledProgram program = pool.compile(source, file, new ErrorReporter(System.err, output));
+      if (program == null) System.exit(65);
+
+      for (int i = 0; i < options.isolates; i++) {
+        runs.add(pool.submit(program));
+      }
+    }
 
-  static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-    hadRuntimeError = true;
+    int exitCode = 0;
+    for (CompletableFuture<IsolatePool.Result> run : runs) {
+      IsolatePool.Result result = run.join();
+      System.out.print(result.output);
+      System.out.flush();
+      System.err.print(result.errors);
+      if (exitCode == 0) exitCode = result.exitCode;
+    }
+    if (exitCode != 0) System.exit(exitCode);
   }
 
-  private static void report(int line, String where, String message) {
-    System.err.println(
-            "[line " + line + "] Error" + where + ": " + message
-    );
-    hadError = true;
-  }
+  private static void runPrompt(Isolate isolate) throws IOException {
+    InputStreamReader input = new InputStreamReader(System.in);
+    BufferedReader reader = new BufferedReader(input);
 
-  static void error(Token token, String message) {
-    if (token.type == TokenType.EOF) {
-      report(token.line, " at end", message);
-    } else {
-      report(token.line, " at " + token.lexeme + "'", message);
+    for (;;) {
+        isolate.output().print("> ");
+        isolate.output().flush();
+        String line = reader.readLine();
+        if (line == null) break;
+        isolate.run(line, null);
+        isolate.errors().clearError();
     }
   }
 }
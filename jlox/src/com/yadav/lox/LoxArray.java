@@ -0,0 +1,293 @@
+package com.yadav.lox;
+
+import java.util.Arrays;
+
+// A growable array. While every element is a number the elements live
+// unboxed in a double[]; the first non-numeric store moves them to an
+// Object[] for good (short of a fill() with a number, which overwrites
+// everything anyway).
+class LoxArray implements NativeObject {
+  private static final int MIN_CAPACITY = 8;
+
+  // Exactly one of these is non-null.
+  private double[] numbers;
+  private Object[] values;
+  private int size;
+
+  LoxArray(int size) {
+    this.numbers = new double[Math.max(MIN_CAPACITY, size)];
+    this.size = size;
+  }
+
+  private LoxArray(double[] numbers, Object[] values, int size) {
+    this.numbers = numbers;
+    this.values = values;
+    this.size = size;
+  }
+
+  static LoxArray of(Object[] elements) {
+    LoxArray array = new LoxArray(0);
+    for (Object element : elements) {
+      array.push(element);
+    }
+    return array;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isNumeric() {
+    return numbers != null;
+  }
+
+  // Only valid while isNumeric().
+  double number(int index) {
+    return numbers[index];
+  }
+
+  Object get(int index) {
+    if (numbers != null) return numbers[index];
+    return values[index];
+  }
+
+  void set(int index, Object value) {
+    if (numbers != null) {
+      if (value instanceof Double) {
+        numbers[index] = (double)value;
+        return;
+      }
+      spill();
+    }
+    values[index] = value;
+  }
+
+  void push(Object value) {
+    int capacity = numbers != null ? numbers.length : values.length;
+    if (size == capacity) {
+      // Doubling keeps push amortized O(1).
+      if (numbers != null) {
+        numbers = Arrays.copyOf(numbers, capacity * 2);
+      } else {
+        values = Arrays.copyOf(values, capacity * 2);
+      }
+    }
+    size++;
+    set(size - 1, value);
+  }
+
+  Object pop() {
+    Object last = get(size - 1);
+    if (values != null) values[size - 1] = null;
+    size--;
+    return last;
+  }
+
+  LoxArray slice(int start, int end) {
+    int capacity = Math.max(MIN_CAPACITY, end - start);
+    if (numbers != null) {
+      double[] copy = new double[capacity];
+      System.arraycopy(numbers, start, copy, 0, end - start);
+      return new LoxArray(copy, null, end - start);
+    }
+    Object[] copy = new Object[capacity];
+    System.arraycopy(values, start, copy, 0, end - start);
+    return new LoxArray(null, copy, end - start);
+  }
+
+  LoxArray copy() {
+    return slice(0, size);
+  }
+
+  void fill(Object value) {
+    if (value instanceof Double) {
+      if (numbers == null) {
+        numbers = new double[values.length];
+        values = null;
+      }
+      Arrays.fill(numbers, 0, size, (double)value);
+    } else {
+      spill();
+      Arrays.fill(values, 0, size, value);
+    }
+  }
+
+  // The elements as doubles for the bulk numeric methods. An Object[]
+  // that only holds numbers again goes back to a double[].
+  private double[] numbers(Token name) {
+    if (numbers != null) return numbers;
+
+    for (int i = 0; i < size; i++) {
+      if (!(values[i] instanceof Double)) {
+        throw new RuntimeError(name, "Array must contain only numbers.");
+      }
+    }
+    numbers = new double[values.length];
+    for (int i = 0; i < size; i++) {
+      numbers[i] = (double)values[i];
+    }
+    values = null;
+    return numbers;
+  }
+
+  private double[] operand(Token name, Object other) {
+    if (!(other instanceof LoxArray) || ((LoxArray)other).size != size) {
+      throw new RuntimeError(name, "Argument must be an array of the same length.");
+    }
+    return ((LoxArray)other).numbers(name);
+  }
+
+  private LoxArray numeric(double[] elements) {
+    return new LoxArray(elements, null, size);
+  }
+
+  private void spill() {
+    if (values != null) return;
+
+    values = new Object[numbers.length];
+    for (int i = 0; i < size; i++) {
+      values[i] = numbers[i];
+    }
+    numbers = null;
+  }
+
+  // Arrays have a length and a few native methods, bound to the array
+  // when they're looked up like an instance's methods.
+  @Override
+  public Object get(Token name) {
+    switch (name.lexeme) {
+      case "length": return (double)size;
+      case "push": return new Method(name, 1);
+      case "pop": return new Method(name, 0);
+      case "slice": return new Method(name, 2);
+      case "fill": return new Method(name, 1);
+      case "copy": return new Method(name, 0);
+      case "sum": return new Method(name, 0);
+      case "min": return new Method(name, 0);
+      case "max": return new Method(name, 0);
+      case "sort": return new Method(name, 0);
+      case "dot": return new Method(name, 1);
+      case "scale": return new Method(name, 1);
+      case "add": return new Method(name, 1);
+      case "map": return new Method(name, 1);
+      default:
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+  }
+
+  private class Method implements LoxCallable {
+    private final Token name;
+    private final int arity;
+
+    Method(Token name, int arity) {
+      this.name = name;
+      this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+      return arity;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+      switch (name.lexeme) {
+        case "pop":
+          if (size == 0) throw new RuntimeError(name, "Can't pop from an empty array.");
+          return pop();
+        case "copy":
+          return copy();
+        case "sum":
+          return NumericKernels.sum(numbers(name), size);
+        case "min":
+          if (size == 0) return null;
+          return NumericKernels.min(numbers(name), size);
+        case "max":
+          if (size == 0) return null;
+          return NumericKernels.max(numbers(name), size);
+        case "sort":
+          NumericKernels.sort(numbers(name), size);
+          return LoxArray.this;
+        default:
+          throw wrongArity(0);
+      }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+      switch (name.lexeme) {
+        case "push":
+          push(a);
+          return (double)size;
+        case "fill":
+          fill(a);
+          return LoxArray.this;
+        case "dot": {
+          double[] other = operand(name, a);
+          return NumericKernels.dot(numbers(name), other, size);
+        }
+        case "scale": {
+          if (!(a instanceof Double)) throw new RuntimeError(name, "Scale factor must be a number.");
+          double[] out = new double[Math.max(MIN_CAPACITY, size)];
+          NumericKernels.scale(numbers(name), (double)a, out, size);
+          return numeric(out);
+        }
+        case "add": {
+          double[] other = operand(name, a);
+          double[] out = new double[Math.max(MIN_CAPACITY, size)];
+          NumericKernels.add(numbers(name), other, out, size);
+          return numeric(out);
+        }
+        case "map": {
+          double[] elements = numbers(name);
+          double[] out = new double[Math.max(MIN_CAPACITY, size)];
+          if (!(a instanceof LoxString) || !NumericKernels.map(a.toString(), elements, out, size)) {
+            throw new RuntimeError(name, "Unknown operation for map().");
+          }
+          return numeric(out);
+        }
+        default:
+          throw wrongArity(1);
+      }
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+      if (name.lexeme.equals("slice")) {
+        int start = bound(a);
+        int end = bound(b);
+        if (start > end) throw new RuntimeError(name, "Slice start is after its end.");
+        return slice(start, end);
+      }
+      throw wrongArity(2);
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+      switch (arguments.length) {
+        case 0: return call0(interpreter);
+        case 1: return call1(interpreter, arguments[0]);
+        case 2: return call2(interpreter, arguments[0], arguments[1]);
+        default: throw wrongArity(arguments.length);
+      }
+    }
+
+    // The interpreter checks arity before calling, so this is a backstop.
+    private RuntimeError wrongArity(int count) {
+      return new RuntimeError(name, "Expected " + arity + " arguments but got " + count + ".");
+    }
+
+    private int bound(Object value) {
+      if (!(value instanceof Double) || (double)value != Math.floor((double)value)
+          || (double)value < 0 || (double)value > size) {
+        throw new RuntimeError(name, "Slice bounds must be integers between 0 and the length.");
+      }
+      return (int)(double)value;
+    }
+
+    @Override
+    public String toString() {
+      return "<native fn>";
+    }
+  }
+}
@@ -1,8 +1,26 @@
 package com.yadav.lox;
 
-import java.util.List;
-
 interface LoxCallable {
   int arity();
-  Object call(Interpreter interpreter, List<Object> arguments);
+
+  // Calls with up to three arguments come in through these entry points
+  // so the call site doesn't need an argument array. Callables that
+  // only implement callN() get one built for them here.
+  default Object call0(Interpreter interpreter) {
+    return callN(interpreter, new Object[0]);
+  }
+
+  default Object call1(Interpreter interpreter, Object a) {
+    return callN(interpreter, new Object[] { a });
+  }
+
+  default Object call2(Interpreter interpreter, Object a, Object b) {
+    return callN(interpreter, new Object[] { a, b });
+  }
+
+  default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    return callN(interpreter, new Object[] { a, b, c });
+  }
+
+  Object callN(Interpreter interpreter, Object[] arguments);
 }
@@ -1,13 +1,28 @@
 package com.yadav.lox;
 
-import java.util.List;
 import java.util.Map;
 
 class LoxClass implements LoxCallable {
   final String name;
+  final LoxClass superclass;
+  final Shape rootShape = new Shape();
 
-  LoxClass(String name) {
+  // Inherited methods are copied in when the class is created, so a
+  // lookup never walks the superclass chain.
+  private final Map<String, LoxFunction> methods;
+
+  LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
     this.name = name;
+    this.superclass = superclass;
+    this.methods = methods;
+  }
+
+  LoxFunction findMethod(String name) {
+    return methods.get(name);
+  }
+
+  Map<String, LoxFunction> methods() {
+    return methods;
   }
 
   @Override
@@ -17,12 +32,49 @@ class LoxClass implements LoxCallable {
 
   @Override
   public int arity() {
-    return 0;
+    LoxFunction initializer = findMethod("init");
+    if (initializer == null) return 0;
+    return initializer.arity();
+  }
+
+  @Override
+  public Object call0(Interpreter interpreter) {
+    LoxInstance instance = new LoxInstance(this);
+    LoxFunction initializer = findMethod("init");
+    if (initializer != null) {
+      new BoundMethod(instance, initializer).call0(interpreter);
+    }
+    return instance;
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a) {
+    LoxInstance instance = new LoxInstance(this);
+    new BoundMethod(instance, findMethod("init")).call1(interpreter, a);
+    return instance;
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a, Object b) {
+    LoxInstance instance = new LoxInstance(this);
+    new BoundMethod(instance, findMethod("init")).call2(interpreter, a, b);
+    return instance;
+  }
+
+  @Override
+  public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    LoxInstance instance = new LoxInstance(this);
+    new BoundMethod(instance, findMethod("init")).call3(interpreter, a, b, c);
+    return instance;
   }
 
   @Override
-  public Object call(Interpreter interpreter, List<Object> arguments) {
+  public Object callN(Interpreter interpreter, Object[] arguments) {
     LoxInstance instance = new LoxInstance(this);
+    LoxFunction initializer = findMethod("init");
+    if (initializer != null) {
+      new BoundMethod(instance, initializer).callN(interpreter, arguments);
+    }
     return instance;
   }
 }
@@ -1,14 +1,34 @@
 package com.yadav.lox;
 
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 
 class LoxFunction implements LoxCallable {
   private final Stmt.Function declaration;
   private final Environment closure;
 
-  LoxFunction(Stmt.Function declaration, Environment closure) {
+  // The unit the function was declared in, whose resolution its body
+  // runs with.
+  private final Interpreter.Unit unit;
+  private final MemoCache memo;
+  final boolean isInitializer;
+
+  LoxFunction(Stmt.Function declaration, Environment closure, Interpreter.Unit unit,
+              MemoCache memo) {
+    this(declaration, closure, unit, memo, false);
+  }
+
+  LoxFunction(Stmt.Function declaration, Environment closure, Interpreter.Unit unit,
+              MemoCache memo, boolean isInitializer) {
     this.declaration = declaration;
+    // The function may be handed to another task, which then sees the
+    // scopes it closes over.
+    closure.share();
     this.closure = closure;
+    this.unit = unit;
+    this.memo = memo;
+    this.isInitializer = isInitializer;
   }
 
   @Override
@@ -16,18 +36,123 @@ class LoxFunction implements LoxCallable {
     return declaration.params.size();
   }
 
+  Environment newFrame() {
+    return new Environment(closure);
+  }
+
+  // A method's frame also holds its receiver, which the resolver puts in
+  // the same scope as the parameters.
+  Environment newFrame(LoxInstance receiver) {
+    Environment frame = new Environment(closure);
+    frame.define("this", receiver);
+    return frame;
+  }
+
+  void bind(Environment frame, int index, Object argument) {
+    frame.define(declaration.params.get(index).lexeme, argument);
+  }
+
+  @Override
+  public Object call0(Interpreter interpreter) {
+    if (memo != null) return callMemoized(interpreter);
+    return run(interpreter, newFrame());
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a) {
+    if (memo != null) return callMemoized(interpreter, a);
+    Environment frame = newFrame();
+    bind(frame, 0, a);
+    return run(interpreter, frame);
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a, Object b) {
+    if (memo != null) return callMemoized(interpreter, a, b);
+    Environment frame = newFrame();
+    bind(frame, 0, a);
+    bind(frame, 1, b);
+    return run(interpreter, frame);
+  }
+
   @Override
-  public Object call(Interpreter interpreter, List<Object> arguments) {
-    Environment environment = new Environment(closure);
-    for (int i = 0; i < declaration.params.size(); i++) {
-      environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+  public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    if (memo != null) return callMemoized(interpreter, a, b, c);
+    Environment frame = newFrame();
+    bind(frame, 0, a);
+    bind(frame, 1, b);
+    bind(frame, 2, c);
+    return run(interpreter, frame);
+  }
+
+  @Override
+  public Object callN(Interpreter interpreter, Object[] arguments) {
+    if (memo != null) return callMemoized(interpreter, arguments);
+    Environment frame = newFrame();
+    for (int i = 0; i < arguments.length; i++) {
+      bind(frame, i, arguments[i]);
+    }
+    return run(interpreter, frame);
+  }
+
+  boolean isMemoized() {
+    return memo != null;
+  }
+
+  static Object memoKey(Object[] arguments) {
+    return arguments.length == 1 ? arguments[0] : Arrays.asList(arguments);
+  }
+
+  // The cached result for the key, or MISS.
+  Object memoized(Object key) {
+    return memo.get(key);
+  }
+
+  private Object callMemoized(Interpreter interpreter, Object... arguments) {
+    Object key = memoKey(arguments);
+    Object result = memo.get(key);
+    if (result != MemoCache.MISS) return result;
+
+    Environment frame = newFrame();
+    for (int i = 0; i < arguments.length; i++) {
+      bind(frame, i, arguments[i]);
     }
-    try {
-      interpreter.executeBlock(declaration.body, environment);
-    } catch (Return returnValue) {
-      return returnValue.value;
+    result = run(interpreter, frame);
+    memo.put(key, result);
+    return result;
+  }
+
+  Object run(Interpreter interpreter, Environment frame) {
+    LoxFunction function = this;
+
+    // Memoized functions entered by a tail call that missed the cache,
+    // with their keys. Each returns what the whole chain returns, so they
+    // are all cached once it ends. Only the newest are kept, as many as
+    // a cache holds; older ones would be evicted first anyway.
+    Deque<Object[]> pending = null;
+
+    // Tail calls come back here as Completion.TAIL_CALL and run in this
+    // loop, so tail-recursive code uses constant Java stack.
+    while (true) {
+      Completion completion = interpreter.executeBlock(function.declaration.body, frame, function.unit);
+      if (completion == Completion.TAIL_CALL) {
+        function = interpreter.takeTailCallee();
+        frame = interpreter.takeTailFrame();
+        Object key = interpreter.takeTailMemoKey();
+        if (key != MemoCache.MISS) {
+          if (pending == null) pending = new ArrayDeque<>();
+          pending.add(new Object[] {function.memo, key});
+          if (pending.size() > function.memo.capacity()) pending.remove();
+        }
+        continue;
+      }
+
+      Object result = completion == Completion.RETURN ? interpreter.takeReturnValue() : null;
+      if (pending != null) {
+        for (Object[] call : pending) ((MemoCache)call[0]).put(call[1], result);
+      }
+      return result;
     }
-    return null;
   }
 
   @Override
@@ -1,26 +1,72 @@
 package com.yadav.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 class LoxInstance {
-  private LoxClass klass;
-  private final Map<String, Object> fields = new HashMap<>();
+  private static final Object[] NO_FIELDS = new Object[0];
+
+  final LoxClass klass;
+  private Shape shape;
+  private Object[] fields = NO_FIELDS;
 
   LoxInstance(LoxClass klass) {
     this.klass = klass;
+    this.shape = klass.rootShape;
   }
 
   Object get(Token name) {
-    if (fields.containsKey(name.lexeme)) {
-      return fields.get(name.lexeme);
+    int slot = shape.slot(name.lexeme);
+    if (slot >= 0) {
+      return field(slot);
     }
 
+    LoxFunction method = klass.findMethod(name.lexeme);
+    if (method != null) return new BoundMethod(this, method);
+
     throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
   }
 
   void set(Token name, Object value) {
-    fields.put(name.lexeme, value);
+    int slot = shape.slot(name.lexeme);
+    if (slot < 0) {
+      Shape next = shape.with(name.lexeme);
+      transition(next);
+      slot = next.size() - 1;
+    }
+    setField(slot, value);
+  }
+
+  // Slot level access for the interpreter's inline caches.
+  //
+  // Tasks that use an instance at the same time race (see TaskNatives),
+  // and one may see a shape whose slots the fields array it sees doesn't
+  // have yet, or replace the array with a shorter copy. The accessors
+  // check the length, so such a race loses updates but never fails.
+  Shape shape() {
+    return shape;
+  }
+
+  Object field(int slot) {
+    Object[] fields = this.fields;
+    return slot < fields.length ? fields[slot] : null;
+  }
+
+  void setField(int slot, Object value) {
+    Object[] fields = this.fields;
+    if (slot >= fields.length) {
+      fields = Arrays.copyOf(fields, Math.max(slot + 1, fields.length * 2));
+      this.fields = fields;
+    }
+    fields[slot] = value;
+  }
+
+  // The fields grow before the new shape is stored, so a task that sees
+  // the shape after the array normally finds room for its slots.
+  void transition(Shape next) {
+    if (fields.length < next.size()) {
+      fields = Arrays.copyOf(fields, Math.max(4, fields.length * 2));
+    }
+    shape = next;
   }
 
   @Override
@@ -0,0 +1,296 @@
+package com.yadav.lox;
+
+import java.util.Arrays;
+
+// A hash map with open addressing and linear probing. Number keys are
+// stored as their raw long bits, so they're neither boxed in the table
+// nor compared through Double.equals(). Other keys keep their hash next
+// to them, so most probes that hit a different key are rejected without
+// calling equals(), and interned strings usually match on identity.
+//
+// Numbers compare by bits like Lox's ==, which also tells -0 from 0.
+class LoxMap implements NativeObject {
+  // Markers in the key position of a slot. A null key means the slot has
+  // never been used; probes stop there.
+  private static final Object NUMBER = new Object();
+  private static final Object DELETED = new Object();
+  private static final Object NIL = new Object();
+
+  private static final int MIN_CAPACITY = 8;
+
+  // The key's bits for number keys, its hash for any other key.
+  private long[] bits;
+  // Key and value side by side, so a probe that matches usually finds
+  // its value on the same cache line. Number keys are just NUMBER here.
+  private Object[] entries;
+  private int size = 0;
+  // Live entries plus tombstones.
+  private int used = 0;
+
+  LoxMap() {
+    allocate(MIN_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    bits = new long[capacity];
+    entries = new Object[capacity * 2];
+  }
+
+  int size() {
+    return size;
+  }
+
+  Object get(Object key) {
+    int slot = find(key);
+    return slot < 0 ? null : entries[slot * 2 + 1];
+  }
+
+  boolean has(Object key) {
+    return find(key) >= 0;
+  }
+
+  void put(Object key, Object value) {
+    Object stored = key instanceof Double ? NUMBER : key == null ? NIL : key;
+    long keyBits = stored == NUMBER ? Double.doubleToLongBits((double)key) : stored.hashCode();
+
+    int mask = bits.length - 1;
+    int slot = slot(stored, keyBits) & mask;
+    int free = -1;
+    while (true) {
+      Object current = entries[slot * 2];
+      if (current == null) break;
+      if (current == DELETED) {
+        if (free < 0) free = slot;
+      } else if (matches(slot, current, stored, keyBits)) {
+        entries[slot * 2 + 1] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (free >= 0) {
+      slot = free;
+    } else {
+      used++;
+    }
+    bits[slot] = keyBits;
+    entries[slot * 2] = stored;
+    entries[slot * 2 + 1] = value;
+    size++;
+
+    // Keep the table at most three quarters full, counting tombstones.
+    if (used * 4 > bits.length * 3) rehash();
+  }
+
+  Object remove(Object key) {
+    int slot = find(key);
+    if (slot < 0) return null;
+
+    Object value = entries[slot * 2 + 1];
+    entries[slot * 2] = DELETED;
+    entries[slot * 2 + 1] = null;
+    size--;
+    return value;
+  }
+
+  private int find(Object key) {
+    Object stored = key instanceof Double ? NUMBER : key == null ? NIL : key;
+    long keyBits = stored == NUMBER ? Double.doubleToLongBits((double)key) : stored.hashCode();
+
+    int mask = bits.length - 1;
+    int slot = slot(stored, keyBits) & mask;
+    while (true) {
+      Object current = entries[slot * 2];
+      if (current == null) return -1;
+      if (matches(slot, current, stored, keyBits)) return slot;
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  // Grows when the live entries need it; otherwise rebuilding at the same
+  // size just clears out the tombstones.
+  private void rehash() {
+    long[] oldBits = bits;
+    Object[] oldEntries = entries;
+
+    int capacity = oldBits.length;
+    if (size * 2 > capacity) capacity *= 2;
+    allocate(capacity);
+
+    int mask = capacity - 1;
+    for (int i = 0; i < oldBits.length; i++) {
+      Object key = oldEntries[i * 2];
+      if (key == null || key == DELETED) continue;
+
+      int slot = slot(key, oldBits[i]) & mask;
+      while (entries[slot * 2] != null) slot = (slot + 1) & mask;
+      bits[slot] = oldBits[i];
+      entries[slot * 2] = key;
+      entries[slot * 2 + 1] = oldEntries[i * 2 + 1];
+    }
+    used = size;
+  }
+
+  // The same key object (an interned string, usually) matches without
+  // looking at the hash. Markers only ever match themselves.
+  private boolean matches(int slot, Object current, Object stored, long keyBits) {
+    if (current == stored) return stored != NUMBER || bits[slot] == keyBits;
+    if (bits[slot] != keyBits) return false;
+    if (current == NUMBER || current == DELETED || current == NIL) return false;
+    return current.equals(stored);
+  }
+
+  // Every number is mixed, integers included: placing counting keys in
+  // adjacent slots would fill long unbroken runs, and with linear probing
+  // a lookup that misses walks the whole run.
+  private static int slot(Object stored, long keyBits) {
+    if (stored == NUMBER) return spread(keyBits);
+
+    // Other keys' hashCode()s are already spread over the int range.
+    int hash = (int)keyBits;
+    return hash ^ (hash >>> 16);
+  }
+
+  // MurmurHash3's 64-bit finalizer.
+  private static int spread(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int)h;
+  }
+
+  private boolean isLive(int slot) {
+    Object key = entries[slot * 2];
+    return key != null && key != DELETED;
+  }
+
+  private Object key(int slot) {
+    Object key = entries[slot * 2];
+    if (key == NUMBER) return Double.longBitsToDouble(bits[slot]);
+    if (key == NIL) return null;
+    return key;
+  }
+
+  // Snapshots in table order, which is how scripts iterate a map.
+  LoxArray keys() {
+    LoxArray result = new LoxArray(0);
+    for (int i = 0; i < bits.length; i++) {
+      if (isLive(i)) result.push(key(i));
+    }
+    return result;
+  }
+
+  LoxArray values() {
+    LoxArray result = new LoxArray(0);
+    for (int i = 0; i < bits.length; i++) {
+      if (isLive(i)) result.push(entries[i * 2 + 1]);
+    }
+    return result;
+  }
+
+  // For stringify(): key, value, key, value... in table order.
+  Object[] entries() {
+    Object[] result = new Object[size * 2];
+    int next = 0;
+    for (int i = 0; i < bits.length; i++) {
+      if (isLive(i)) {
+        result[next++] = key(i);
+        result[next++] = entries[i * 2 + 1];
+      }
+    }
+    return result;
+  }
+
+  void clear() {
+    Arrays.fill(entries, null);
+    size = 0;
+    used = 0;
+  }
+
+  @Override
+  public Object get(Token name) {
+    switch (name.lexeme) {
+      case "get": return new Method(name, 1);
+      case "put": return new Method(name, 2);
+      case "remove": return new Method(name, 1);
+      case "has": return new Method(name, 1);
+      case "size": return new Method(name, 0);
+      case "keys": return new Method(name, 0);
+      case "values": return new Method(name, 0);
+      case "clear": return new Method(name, 0);
+      default:
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+  }
+
+  private class Method implements LoxCallable {
+    private final Token name;
+    private final int arity;
+
+    Method(Token name, int arity) {
+      this.name = name;
+      this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+      return arity;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+      switch (name.lexeme) {
+        case "size": return (double)size;
+        case "keys": return keys();
+        case "values": return values();
+        case "clear":
+          clear();
+          return null;
+        default:
+          throw wrongArity(0);
+      }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+      switch (name.lexeme) {
+        case "get": return get(a);
+        case "remove": return remove(a);
+        case "has": return has(a);
+        default:
+          throw wrongArity(1);
+      }
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+      if (name.lexeme.equals("put")) {
+        put(a, b);
+        return b;
+      }
+      throw wrongArity(2);
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+      switch (arguments.length) {
+        case 0: return call0(interpreter);
+        case 1: return call1(interpreter, arguments[0]);
+        case 2: return call2(interpreter, arguments[0], arguments[1]);
+        default: throw wrongArity(arguments.length);
+      }
+    }
+
+    // The interpreter checks arity before calling, so this is a backstop.
+    private RuntimeError wrongArity(int count) {
+      return new RuntimeError(name, "Expected " + arity + " arguments but got " + count + ".");
+    }
+
+    @Override
+    public String toString() {
+      return "<native fn>";
+    }
+  }
+}
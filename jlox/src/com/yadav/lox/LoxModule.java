@@ -0,0 +1,39 @@
+package com.yadav.lox;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A source file that has been scanned, parsed and resolved, together with
+// what the Resolver worked out about it. Modules are built once by
+// the ModuleLoader and then shared by every program that imports them, so
+// nothing in here changes after construction.
+final class LoxModule {
+  final Path path;
+  final List<Stmt> statements;
+  final Resolution resolution;
+
+  // Where each of the module's own import statements points, in source
+  // order.
+  final Map<Stmt.Import, Path> imports;
+
+  LoxModule(Path path, List<Stmt> statements, Resolution resolution,
+      Map<Stmt.Import, Path> imports) {
+    this.path = path;
+    this.statements = Collections.unmodifiableList(new ArrayList<>(statements));
+    this.resolution = resolution;
+    this.imports = Collections.unmodifiableMap(new LinkedHashMap<>(imports));
+  }
+
+  String name() {
+    return path.getFileName().toString();
+  }
+
+  @Override
+  public String toString() {
+    return "<module " + name() + ">";
+  }
+}
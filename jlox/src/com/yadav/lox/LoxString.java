@@ -0,0 +1,143 @@
+package com.yadav.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// A Lox string. Concatenation doesn't copy: it builds a rope node over
+// its two operands, and the characters are only laid out when something
+// looks at them (printing, equality, hashing). Building a string in a
+// loop is then linear instead of quadratic.
+//
+// String literals are interned, so comparing two of them is a reference
+// check, and their hash is computed once when they're interned.
+final class LoxString implements CharSequence {
+  static final StringTable table = new StringTable();
+
+  // Concatenations shorter than this are copied right away; a rope node
+  // costs more than the characters it would save.
+  private static final int MIN_ROPE_LENGTH = 32;
+
+  // Either the flat String or a Concat. It only ever goes from Concat to
+  // String, and both are immutable, so a racing flatten is harmless.
+  private Object content;
+  private final int length;
+  private final boolean interned;
+  private int hash;
+
+  private static final class Concat {
+    final LoxString left;
+    final LoxString right;
+
+    Concat(LoxString left, LoxString right) {
+      this.left = left;
+      this.right = right;
+    }
+  }
+
+  LoxString(String value) {
+    this(value, false);
+  }
+
+  private LoxString(String value, boolean interned) {
+    this.content = value;
+    this.length = value.length();
+    this.interned = interned;
+    if (interned) hash = value.hashCode();
+  }
+
+  private LoxString(LoxString left, LoxString right) {
+    this.content = new Concat(left, right);
+    this.length = left.length + right.length;
+    this.interned = false;
+  }
+
+  static LoxString intern(String value) {
+    return table.intern(value);
+  }
+
+  // Only StringTable makes these, after checking there isn't one yet.
+  static LoxString interned(String value) {
+    return new LoxString(value, true);
+  }
+
+  LoxString concat(LoxString other) {
+    if (other.length == 0) return this;
+    if (length == 0) return other;
+
+    if (length + other.length < MIN_ROPE_LENGTH) {
+      return new LoxString(toString() + other.toString());
+    }
+    return new LoxString(this, other);
+  }
+
+  boolean isFlat() {
+    return content instanceof String;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().subSequence(start, end);
+  }
+
+  @Override
+  public String toString() {
+    Object current = content;
+    if (current instanceof String) return (String)current;
+
+    String flat = flatten((Concat)current);
+    content = flat;
+    return flat;
+  }
+
+  // Walks the rope with an explicit stack; a string built one piece at a
+  // time in a loop is a tree as deep as the loop ran.
+  private String flatten(Concat root) {
+    StringBuilder builder = new StringBuilder(length);
+    Deque<Object> pending = new ArrayDeque<>();
+    pending.push(root);
+
+    while (!pending.isEmpty()) {
+      Object node = pending.pop();
+      if (node instanceof Concat) {
+        Concat concat = (Concat)node;
+        pending.push(concat.right.content);
+        pending.push(concat.left.content);
+      } else {
+        builder.append((String)node);
+      }
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) return true;
+    if (!(other instanceof LoxString)) return false;
+
+    LoxString that = (LoxString)other;
+    if (interned && that.interned) return false;
+    if (length != that.length) return false;
+    if (hash != 0 && that.hash != 0 && hash != that.hash) return false;
+    return toString().equals(that.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      h = toString().hashCode();
+      hash = h;
+    }
+    return h;
+  }
+}
@@ -0,0 +1,317 @@
+package com.yadav.lox;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A file opened for reading through a sliding memory-mapped window. Only
+// one window is mapped at a time, so memory stays bounded however large
+// the file is. Scripts walk it with a cursor: whole lines or records as
+// strings, or numbers parsed straight from the mapped bytes without
+// making a string first. Text is read as UTF-8.
+class MappedFile implements NativeObject {
+  private static final long WINDOW_SIZE = 64L << 20;
+
+  // The powers of ten a double holds exactly, for the fast number path.
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final String path;
+  private final FileChannel channel;
+  private final long size;
+
+  private MappedByteBuffer window;
+  private long windowStart = 0;
+  private int windowLength = 0;
+
+  private long position = 0;
+
+  MappedFile(String path) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+    this.size = channel.size();
+    map(0);
+  }
+
+  private void map(long start) {
+    windowStart = start;
+    windowLength = (int)Math.min(WINDOW_SIZE, size - start);
+    try {
+      window = channel.map(FileChannel.MapMode.READ_ONLY, start, windowLength);
+    } catch (IOException e) {
+      throw new NativeError("Could not map '" + path + "': " + e.getMessage());
+    }
+  }
+
+  // Only valid for position < size. The window is moved forward, never
+  // back, so a line that straddles two windows gets remapped once.
+  private byte byteAt(long position) {
+    long offset = position - windowStart;
+    if (offset < 0 || offset >= windowLength) {
+      map(position);
+      offset = 0;
+    }
+    return window.get((int)offset);
+  }
+
+  boolean atEnd() {
+    return position >= size;
+  }
+
+  // The next line without its terminator ("\n" or "\r\n"), or null at the
+  // end of the file.
+  LoxString nextLine() {
+    if (atEnd()) return null;
+
+    long end = find(position, (byte)'\n');
+    long next = end < size ? end + 1 : end;
+    if (end > position && byteAt(end - 1) == '\r') end--;
+
+    LoxString line = decode(position, end);
+    position = next;
+    return line;
+  }
+
+  // The bytes up to the next delimiter, which is consumed.
+  LoxString nextRecord(byte delimiter) {
+    if (atEnd()) return null;
+
+    long end = find(position, delimiter);
+    LoxString record = decode(position, end);
+    position = end < size ? end + 1 : end;
+    return record;
+  }
+
+  // Moves past the end of the current line. False at the end of the file.
+  boolean skipLine() {
+    if (atEnd()) return false;
+    long end = find(position, (byte)'\n');
+    position = end < size ? end + 1 : end;
+    return true;
+  }
+
+  private long find(long from, byte delimiter) {
+    long i = from;
+    while (i < size && byteAt(i) != delimiter) i++;
+    return i;
+  }
+
+  private LoxString decode(long start, long end) {
+    long length = end - start;
+    if (length > Integer.MAX_VALUE - 8) {
+      throw new NativeError("Line is too long to make a string.");
+    }
+
+    byte[] bytes = new byte[(int)length];
+    long offset = start - windowStart;
+    if (offset >= 0 && offset + length <= windowLength) {
+      window.get((int)offset, bytes);
+    } else {
+      for (int i = 0; i < bytes.length; i++) bytes[i] = byteAt(start + i);
+    }
+    return new LoxString(new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  // Parses the next number on the current line, skipping anything that
+  // can't start one: spaces, commas, tabs and other separators. Returns
+  // null, without consuming it, once the end of the line is reached.
+  Double nextNumber() {
+    while (position < size) {
+      byte c = byteAt(position);
+      if (c == '\n') return null;
+      if (isDigit(c) || c == '-' || c == '+' || c == '.') {
+        long start = position;
+        Double number = parseNumber();
+        if (number != null) return number;
+        position = start + 1;
+      } else {
+        position++;
+      }
+    }
+    return null;
+  }
+
+  // Reads [sign] digits [. digits] [e [sign] digits] at the cursor. Up to
+  // 19 significant digits with a small enough exponent are converted
+  // exactly with one multiply or divide; anything else goes through
+  // Double.parseDouble() on the same characters.
+  private Double parseNumber() {
+    long start = position;
+    boolean negative = false;
+    byte c = byteAt(position);
+    if (c == '-' || c == '+') {
+      negative = c == '-';
+      position++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean sawDigit = false;
+    boolean overflow = false;
+
+    while (position < size && isDigit(c = byteAt(position))) {
+      sawDigit = true;
+      if (digits < 19) {
+        mantissa = mantissa * 10 + (c - '0');
+        if (mantissa != 0) digits++;
+      } else {
+        exponent++;
+        overflow = true;
+      }
+      position++;
+    }
+
+    if (position < size && byteAt(position) == '.') {
+      position++;
+      while (position < size && isDigit(c = byteAt(position))) {
+        sawDigit = true;
+        if (digits < 19) {
+          mantissa = mantissa * 10 + (c - '0');
+          if (mantissa != 0) digits++;
+          exponent--;
+        } else {
+          overflow = true;
+        }
+        position++;
+      }
+    }
+
+    if (!sawDigit) {
+      position = start;
+      return null;
+    }
+
+    if (position < size && (byteAt(position) == 'e' || byteAt(position) == 'E')) {
+      long mark = position;
+      position++;
+      boolean negativeExponent = false;
+      if (position < size && (byteAt(position) == '-' || byteAt(position) == '+')) {
+        negativeExponent = byteAt(position) == '-';
+        position++;
+      }
+      if (position < size && isDigit(byteAt(position))) {
+        int written = 0;
+        while (position < size && isDigit(c = byteAt(position))) {
+          if (written < 10000) written = written * 10 + (c - '0');
+          position++;
+        }
+        exponent += negativeExponent ? -written : written;
+      } else {
+        // Just an 'e' after the number, not an exponent.
+        position = mark;
+      }
+    }
+
+    if (!overflow && mantissa < (1L << 53) && Math.abs(exponent) < POWERS_OF_TEN.length) {
+      double value = (double)mantissa;
+      value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+      return negative ? -value : value;
+    }
+
+    StringBuilder text = new StringBuilder();
+    for (long i = start; i < position; i++) text.append((char)byteAt(i));
+    return Double.parseDouble(text.toString());
+  }
+
+  private static boolean isDigit(byte c) {
+    return c >= '0' && c <= '9';
+  }
+
+  void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new NativeError("Could not close '" + path + "': " + e.getMessage());
+    }
+    window = null;
+  }
+
+  @Override
+  public Object get(Token name) {
+    switch (name.lexeme) {
+      case "size": return (double)size;
+      case "position": return (double)position;
+      case "nextLine": return new Method(name, 0);
+      case "nextRecord": return new Method(name, 1);
+      case "nextNumber": return new Method(name, 0);
+      case "skipLine": return new Method(name, 0);
+      case "atEnd": return new Method(name, 0);
+      case "close": return new Method(name, 0);
+      default:
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+  }
+
+  private class Method implements LoxCallable {
+    private final Token name;
+    private final int arity;
+
+    Method(Token name, int arity) {
+      this.name = name;
+      this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+      return arity;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+      if (window == null) throw new RuntimeError(name, "File is closed.");
+      switch (name.lexeme) {
+        case "nextLine": return nextLine();
+        case "nextNumber": return nextNumber();
+        case "skipLine": return skipLine();
+        case "atEnd": return atEnd();
+        case "close":
+          close();
+          return null;
+        default:
+          throw wrongArity(0);
+      }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+      if (window == null) throw new RuntimeError(name, "File is closed.");
+      if (name.lexeme.equals("nextRecord")) {
+        if (!(a instanceof LoxString) || a.toString().length() != 1 || a.toString().charAt(0) > 127) {
+          throw new RuntimeError(name, "Delimiter must be a single ASCII character.");
+        }
+        return nextRecord((byte)a.toString().charAt(0));
+      }
+      throw wrongArity(1);
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+      switch (arguments.length) {
+        case 0: return call0(interpreter);
+        case 1: return call1(interpreter, arguments[0]);
+        default: throw wrongArity(arguments.length);
+      }
+    }
+
+    // The interpreter checks arity before calling, so this is a backstop.
+    private RuntimeError wrongArity(int count) {
+      return new RuntimeError(name, "Expected " + arity + " arguments but got " + count + ".");
+    }
+
+    @Override
+    public String toString() {
+      return "<native fn>";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "<file " + path + ">";
+  }
+}
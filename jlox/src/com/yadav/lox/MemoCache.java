@@ -0,0 +1,61 @@
+package com.yadav.lox;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded cache of the results of one pure function, keyed on the
+// argument values and evicting the least recently used entry once it is
+// full. A single argument is its own key, several are wrapped in a List.
+// Tasks calling the same function share its cache, so every access
+// takes the cache's lock; a lookup in access order moves the entry too.
+class MemoCache {
+  static final Object MISS = new Object();
+
+  private final String name;
+  private final int capacity;
+  private final Map<Object, Object> results;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  MemoCache(String name, int capacity) {
+    this.name = name;
+    this.capacity = capacity;
+    this.results = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+        if (size() <= capacity) return false;
+        evictions++;
+        return true;
+      }
+    };
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  // Returns MISS rather than null when the key isn't cached, since nil
+  // is a perfectly good result.
+  synchronized Object get(Object key) {
+    Object result = results.getOrDefault(key, MISS);
+    if (result == MISS) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return result;
+  }
+
+  synchronized void put(Object key, Object result) {
+    results.put(key, result);
+  }
+
+  @Override
+  public synchronized String toString() {
+    long calls = hits + misses;
+    double hitRate = calls == 0 ? 0 : 100.0 * hits / calls;
+    return String.format("memo %s: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d cached",
+        name, hits, misses, hitRate, evictions, results.size());
+  }
+}
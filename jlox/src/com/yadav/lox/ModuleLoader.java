@@ -0,0 +1,216 @@
+package com.yadav.lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Finds, compiles and caches the modules a program imports.
+//
+// An import names a file relative to the directory of the file doing the
+// importing or, failing that, to one of the directories on the module
+// path; ".lox" is added when the name doesn't already end with it.
+//
+// Each module is scanned, parsed and resolved once. The cache is keyed by
+// a SHA-256 of the file's location and contents, so an edited file is
+// compiled again while an unchanged one is shared, resolution and all, by
+// everything that imports it. Only modules from a load that reported no
+// errors are cached.
+//
+// Loading walks the import graph a level at a time. Nothing on one level
+// depends on anything else on it, so those files are read and compiled in
+// parallel. Once the whole graph is known it is checked for cycles, which
+// would otherwise have a module import itself before it has finished
+// running.
+//
+// The cache is the only state kept between loads, so one loader can be
+// shared by any number of isolates.
+class ModuleLoader {
+  private static final String EXTENSION = ".lox";
+
+  private final List<Path> modulePath;
+  private final Map<String, LoxModule> cache = new ConcurrentHashMap<>();
+
+  ModuleLoader(List<Path> modulePath) {
+    this.modulePath = List.copyOf(modulePath);
+  }
+
+  // Loads everything reachable from the imports among statements, the top
+  // level of the file at origin, or of the prompt when origin is null.
+  // Returns the module behind every import statement in the graph.
+  Map<Stmt.Import, LoxModule> load(List<Stmt> statements, Path origin, ErrorReporter errors) {
+    Path directory = origin == null ? Paths.get("").toAbsolutePath() : origin.getParent();
+    Map<Stmt.Import, Path> roots = locate(statements, directory, errors);
+
+    Map<Path, LoxModule> loaded = new HashMap<>();
+    Map<String, LoxModule> compiled = new HashMap<>();
+    Map<Stmt.Import, Path> pending = roots;
+    while (!pending.isEmpty()) {
+      Map<Path, CompletableFuture<LoxModule>> level = new LinkedHashMap<>();
+      for (Map.Entry<Stmt.Import, Path> entry : pending.entrySet()) {
+        Path path = entry.getValue();
+        if (loaded.containsKey(path) || level.containsKey(path)) continue;
+
+        Stmt.Import importer = entry.getKey();
+        level.put(path, CompletableFuture.supplyAsync(() -> compile(path, importer, compiled, errors)));
+      }
+
+      pending = new LinkedHashMap<>();
+      for (Map.Entry<Path, CompletableFuture<LoxModule>> entry : level.entrySet()) {
+        LoxModule module = entry.getValue().join();
+        loaded.put(entry.getKey(), module);
+        if (module != null) pending.putAll(module.imports);
+      }
+    }
+
+    Deque<Path> chain = new ArrayDeque<>();
+    if (origin != null) chain.add(origin);
+    checkCycles(roots, chain, new HashSet<>(), loaded, errors);
+
+    if (!errors.hadError()) cache.putAll(compiled);
+
+    Map<Stmt.Import, LoxModule> links = new HashMap<>();
+    link(roots, loaded, links);
+    for (LoxModule module : loaded.values()) {
+      if (module != null) link(module.imports, loaded, links);
+    }
+    return links;
+  }
+
+  private static void link(Map<Stmt.Import, Path> imports, Map<Path, LoxModule> loaded,
+      Map<Stmt.Import, LoxModule> links) {
+    for (Map.Entry<Stmt.Import, Path> entry : imports.entrySet()) {
+      LoxModule module = loaded.get(entry.getValue());
+      if (module != null) links.put(entry.getKey(), module);
+    }
+  }
+
+  // Runs on a worker thread, so the modules compiled by this load are
+  // recorded under the map's lock.
+  private LoxModule compile(Path path, Stmt.Import importer, Map<String, LoxModule> compiled,
+      ErrorReporter errors) {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(path);
+    } catch (IOException error) {
+      errors.error(importer.path, "Can't read module '" + importer.path.literal + "'.");
+      return null;
+    }
+
+    String key = hash(path, bytes);
+    LoxModule module = cache.get(key);
+    if (module != null) return module;
+
+    Scanner scanner = new Scanner(new String(bytes, Charset.defaultCharset()), errors);
+    Parser parser = new Parser(scanner.scanTokens(), errors);
+    List<Stmt> statements = parser.parse();
+
+    // A statement that failed to parse leaves a null behind; there is
+    // nothing to resolve and the error has already been reported.
+    Resolver resolver = new Resolver(errors);
+    if (!statements.contains(null)) resolver.resolve(statements);
+
+    module = new LoxModule(path, statements, resolver.resolution(),
+        locate(statements, path.getParent(), errors));
+    synchronized (compiled) {
+      compiled.put(key, module);
+    }
+    return module;
+  }
+
+  private Map<Stmt.Import, Path> locate(List<Stmt> statements, Path directory,
+      ErrorReporter errors) {
+    Map<Stmt.Import, Path> imports = new LinkedHashMap<>();
+    for (Stmt statement : statements) {
+      if (!(statement instanceof Stmt.Import)) continue;
+
+      Stmt.Import stmt = (Stmt.Import)statement;
+      Path path = find(stmt.path.literal.toString(), directory);
+      if (path == null) {
+        errors.error(stmt.path, "Can't find module '" + stmt.path.literal + "'.");
+      } else {
+        imports.put(stmt, path);
+      }
+    }
+    return imports;
+  }
+
+  private Path find(String name, Path directory) {
+    if (!name.endsWith(EXTENSION)) name += EXTENSION;
+
+    List<Path> roots = new ArrayList<>();
+    roots.add(directory);
+    roots.addAll(modulePath);
+    for (Path root : roots) {
+      Path candidate = root.resolve(name);
+      if (!Files.isRegularFile(candidate)) continue;
+      try {
+        return candidate.toRealPath();
+      } catch (IOException error) {
+        // Try the next directory.
+      }
+    }
+    return null;
+  }
+
+  // Depth-first over the import graph, with chain holding the modules
+  // between the program and the current one. Modules that have been
+  // visited once are skipped: anything reachable from them has been
+  // checked already.
+  private static void checkCycles(Map<Stmt.Import, Path> imports, Deque<Path> chain,
+      Set<Path> visited, Map<Path, LoxModule> loaded, ErrorReporter errors) {
+    for (Map.Entry<Stmt.Import, Path> entry : imports.entrySet()) {
+      Path path = entry.getValue();
+      if (chain.contains(path)) {
+        errors.error(entry.getKey().path, "Import cycle: " + describe(chain, path) + ".");
+        continue;
+      }
+      if (!visited.add(path)) continue;
+
+      LoxModule module = loaded.get(path);
+      if (module == null) continue;
+      chain.addLast(path);
+      checkCycles(module.imports, chain, visited, loaded, errors);
+      chain.removeLast();
+    }
+  }
+
+  private static String describe(Deque<Path> chain, Path closing) {
+    StringBuilder cycle = new StringBuilder();
+    boolean inCycle = false;
+    for (Path path : chain) {
+      if (path.equals(closing)) inCycle = true;
+      if (inCycle) cycle.append(path.getFileName()).append(" -> ");
+    }
+    return cycle.append(closing.getFileName()).toString();
+  }
+
+  private static String hash(Path path, byte[] bytes) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(path.toString().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte)0);
+      digest.update(bytes);
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException error) {
+      // Every Java platform is required to provide SHA-256.
+      throw new IllegalStateException(error);
+    }
+  }
+}
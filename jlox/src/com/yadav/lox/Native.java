@@ -0,0 +1,15 @@
+package com.yadav.lox;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks a static method as a Lox native; see NativeFunction for the
+// parameter and return types it may use. The Lox name defaults to the
+// method's name.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface Native {
+  String value() default "";
+}
@@ -0,0 +1,212 @@
+package com.yadav.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+// A static Java method exposed to Lox. The method is bound once, when
+// it's registered, as a MethodHandle typed to its arity: the one of
+// call0() through call3() that matches invokes it exactly, and callN()
+// goes through a spreader over the same handle. Argument conversion is
+// part of the handle, so a double parameter is unboxed straight from the
+// Double the interpreter passes, with no reflection or argument list per
+// call.
+//
+// Parameters may be double, boolean, String (a Lox string), or Object
+// for any value. A leading Interpreter parameter receives the calling
+// interpreter and isn't part of the Lox arity. Returns may be double,
+// boolean, String, Object or void (nil).
+class NativeFunction implements LoxCallable {
+  private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+  private static final MethodHandle TO_DOUBLE;
+  private static final MethodHandle TO_BOOLEAN;
+  private static final MethodHandle TO_STRING;
+  private static final MethodHandle FROM_STRING;
+
+  static {
+    try {
+      TO_DOUBLE = lookup.findStatic(NativeFunction.class, "toDouble",
+          MethodType.methodType(double.class, Object.class));
+      TO_BOOLEAN = lookup.findStatic(NativeFunction.class, "toBoolean",
+          MethodType.methodType(boolean.class, Object.class));
+      TO_STRING = lookup.findStatic(NativeFunction.class, "toJavaString",
+          MethodType.methodType(String.class, Object.class));
+      FROM_STRING = lookup.findStatic(NativeFunction.class, "fromJavaString",
+          MethodType.methodType(Object.class, String.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  final String name;
+  private final int arity;
+  // Takes (Interpreter, Object * arity) and returns Object.
+  private final MethodHandle handle;
+  private final MethodHandle spread;
+
+  private NativeFunction(String name, MethodHandle handle) {
+    this.name = name;
+    this.handle = handle;
+    this.arity = handle.type().parameterCount() - 1;
+    this.spread = handle.asSpreader(Object[].class, arity);
+  }
+
+  // Binding is done once per class. The functions hold no state, so
+  // every isolate defines the same ones.
+  private static final ClassValue<List<NativeFunction>> bound = new ClassValue<>() {
+    @Override
+    protected List<NativeFunction> computeValue(Class<?> natives) {
+      List<NativeFunction> functions = new ArrayList<>();
+      for (Method method : natives.getDeclaredMethods()) {
+        Native annotation = method.getAnnotation(Native.class);
+        if (annotation != null) functions.add(bind(method, annotation));
+      }
+      return List.copyOf(functions);
+    }
+  };
+
+  // Defines every @Native method of the class in the given environment.
+  static void defineAll(Environment globals, Class<?> natives) {
+    for (NativeFunction function : bound.get(natives)) {
+      globals.define(function.name, function);
+    }
+  }
+
+  static NativeFunction bind(Method method, Native annotation) {
+    if (!Modifier.isStatic(method.getModifiers())) {
+      throw new IllegalArgumentException("Native " + method + " must be static.");
+    }
+
+    String name = annotation.value().isEmpty() ? method.getName() : annotation.value();
+    MethodHandle handle;
+    try {
+      method.setAccessible(true);
+      handle = lookup.unreflect(method);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Native " + method + " isn't accessible.", e);
+    }
+
+    Class<?>[] parameters = method.getParameterTypes();
+    boolean wantsInterpreter = parameters.length > 0 && parameters[0] == Interpreter.class;
+    if (!wantsInterpreter) {
+      handle = MethodHandles.dropArguments(handle, 0, Interpreter.class);
+    }
+
+    int first = wantsInterpreter ? 1 : 0;
+    for (int i = first; i < parameters.length; i++) {
+      int position = wantsInterpreter ? i : i + 1;
+      handle = MethodHandles.filterArguments(handle, position, converter(method, parameters[i]));
+    }
+
+    Class<?> result = method.getReturnType();
+    if (result == String.class) {
+      handle = MethodHandles.filterReturnValue(handle, FROM_STRING);
+    } else if (result != void.class && result != double.class
+        && result != boolean.class && result != Object.class) {
+      throw new IllegalArgumentException("Native " + method + " has an unsupported return type.");
+    }
+
+    // Everything is Object at the call site. Boxing a double or boolean
+    // result and turning void into nil are done by asType().
+    MethodType generic = MethodType.genericMethodType(handle.type().parameterCount() - 1)
+        .insertParameterTypes(0, Interpreter.class);
+    return new NativeFunction(name, handle.asType(generic));
+  }
+
+  private static MethodHandle converter(Method method, Class<?> type) {
+    if (type == double.class) return TO_DOUBLE;
+    if (type == boolean.class) return TO_BOOLEAN;
+    if (type == String.class) return TO_STRING;
+    if (type == Object.class) return MethodHandles.identity(Object.class);
+    throw new IllegalArgumentException("Native " + method + " has an unsupported parameter type.");
+  }
+
+  private static double toDouble(Object value) {
+    if (value instanceof Double) return (double)value;
+    throw new NativeError("Argument must be a number.");
+  }
+
+  private static boolean toBoolean(Object value) {
+    if (value instanceof Boolean) return (boolean)value;
+    throw new NativeError("Argument must be a boolean.");
+  }
+
+  private static String toJavaString(Object value) {
+    if (value instanceof LoxString) return value.toString();
+    throw new NativeError("Argument must be a string.");
+  }
+
+  private static Object fromJavaString(String value) {
+    return value == null ? null : new LoxString(value);
+  }
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public Object call0(Interpreter interpreter) {
+    try {
+      return handle.invokeExact(interpreter);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a) {
+    try {
+      return handle.invokeExact(interpreter, a);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a, Object b) {
+    try {
+      return handle.invokeExact(interpreter, a, b);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    try {
+      return handle.invokeExact(interpreter, a, b, c);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Object callN(Interpreter interpreter, Object[] arguments) {
+    try {
+      return spread.invokeExact(interpreter, arguments);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  // Natives report Lox errors with NativeError, and a native that calls
+  // back into Lox may pass on a RuntimeError; both go through untouched,
+  // as do JVM errors such as a stack overflow, which the interpreter
+  // reports itself. Any other exception is a bug in the native, and
+  // becomes a Lox error rather than ending the program.
+  private static RuntimeException rethrow(Throwable e) {
+    if (e instanceof NativeError || e instanceof RuntimeError) return (RuntimeException)e;
+    if (e instanceof Error) throw (Error)e;
+    return new NativeError(e.getMessage() == null ? e.toString() : e.getMessage());
+  }
+
+  @Override
+  public String toString() {
+    return "<native fn>";
+  }
+}
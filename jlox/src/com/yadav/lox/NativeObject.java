@@ -0,0 +1,7 @@
+package com.yadav.lox;
+
+// A value implemented in Java whose properties (mostly native methods)
+// scripts reach with the usual '.' syntax.
+interface NativeObject {
+  Object get(Token name);
+}
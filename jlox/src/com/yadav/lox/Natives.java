@@ -0,0 +1,82 @@
+package com.yadav.lox;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// The built-in global functions.
+final class Natives {
+  private Natives() {}
+
+  @Native
+  static double clock() {
+    return (double)System.currentTimeMillis() / 1000.0;
+  }
+
+  // Array(n) makes an array of n zeros; [a, b, c] builds one from values.
+  @Native("Array")
+  static Object newArray(double size) {
+    if (size < 0 || size != Math.floor(size) || size > Integer.MAX_VALUE - 8) {
+      throw new NativeError("Array size must be a non-negative integer.");
+    }
+    return new LoxArray((int)size);
+  }
+
+  @Native("Map")
+  static Object newMap() {
+    return new LoxMap();
+  }
+
+  // Opens a file for reading through a memory mapping; see MappedFile.
+  @Native
+  static Object openFile(String path) {
+    try {
+      return new MappedFile(path);
+    } catch (IOException e) {
+      throw new NativeError("Could not open '" + path + "'.");
+    }
+  }
+
+  // A pull parser over a UTF-8 file, which may hold one JSON value or a
+  // stream of them; see JsonReader.
+  @Native
+  static Object jsonFile(String path) {
+    try {
+      return new JsonReader(Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new NativeError("Could not open '" + path + "'.");
+    }
+  }
+
+  @Native
+  static Object jsonString(String text) {
+    return new JsonReader(new StringReader(text));
+  }
+
+  @Native
+  static Object parseJson(String text) {
+    JsonReader reader = new JsonReader(new StringReader(text));
+    Object value = reader.read();
+    if (reader.hasNext()) throw new NativeError("Invalid JSON: more than one value.");
+    return value;
+  }
+
+  @Native
+  static Object toJson(Object value) {
+    return JsonWriter.toJson(value);
+  }
+
+  // Writes the value as JSON straight into the program's output. Like
+  // print, it holds the sink's lock so the line stays whole when tasks
+  // print at the same time.
+  @Native
+  static void printJson(Interpreter interpreter, Object value) {
+    OutputSink output = interpreter.output();
+    synchronized (output) {
+      new JsonWriter(output).write(value);
+      output.newline();
+    }
+  }
+}
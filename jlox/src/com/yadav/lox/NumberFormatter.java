@@ -0,0 +1,37 @@
+package com.yadav.lox;
+
+// Formats numbers exactly as Lox always has: Double.toString() with a
+// trailing ".0" dropped. Integral values below 10^7, the ones that
+// Double.toString() writes without an exponent, are written as a long
+// straight into the destination without building a String first.
+final class NumberFormatter {
+  private static final double PLAIN_INTEGER_LIMIT = 1e7;
+
+  private NumberFormatter() {}
+
+  static void append(StringBuilder out, double value) {
+    long integer = (long)value;
+    if (integer == value && Math.abs(value) < PLAIN_INTEGER_LIMIT) {
+      // -0.0 == 0, but Double.toString() keeps its sign.
+      if (integer == 0 && Double.doubleToRawLongBits(value) != 0) {
+        out.append("-0");
+      } else {
+        out.append(integer);
+      }
+      return;
+    }
+
+    String text = Double.toString(value);
+    if (text.endsWith(".0")) {
+      out.append(text, 0, text.length() - 2);
+    } else {
+      out.append(text);
+    }
+  }
+
+  static String format(double value) {
+    StringBuilder out = new StringBuilder(24);
+    append(out, value);
+    return out.toString();
+  }
+}
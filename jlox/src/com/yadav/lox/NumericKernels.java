@@ -0,0 +1,115 @@
+package com.yadav.lox;
+
+import java.util.Arrays;
+
+// Bulk operations over the first n elements of double arrays. The loops
+// are kept simple enough for C2's superword pass to turn into SIMD code.
+// Reductions carry four independent partial results, like the lanes of
+// a vector register, so the adds don't form one long dependency chain.
+// That sums in a different order than a sequential loop would, which can
+// change the last bits of a non-integral result.
+final class NumericKernels {
+  // Below this many elements a parallel sort costs more than it saves.
+  private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+  private NumericKernels() {}
+
+  static double sum(double[] a, int n) {
+    double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+    int i = 0;
+    for (; i + 3 < n; i += 4) {
+      s0 += a[i];
+      s1 += a[i + 1];
+      s2 += a[i + 2];
+      s3 += a[i + 3];
+    }
+    for (; i < n; i++) s0 += a[i];
+    return (s0 + s1) + (s2 + s3);
+  }
+
+  static double dot(double[] a, double[] b, int n) {
+    double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+    int i = 0;
+    for (; i + 3 < n; i += 4) {
+      s0 += a[i] * b[i];
+      s1 += a[i + 1] * b[i + 1];
+      s2 += a[i + 2] * b[i + 2];
+      s3 += a[i + 3] * b[i + 3];
+    }
+    for (; i < n; i++) s0 += a[i] * b[i];
+    return (s0 + s1) + (s2 + s3);
+  }
+
+  static void scale(double[] a, double factor, double[] out, int n) {
+    for (int i = 0; i < n; i++) out[i] = a[i] * factor;
+  }
+
+  static void add(double[] a, double[] b, double[] out, int n) {
+    for (int i = 0; i < n; i++) out[i] = a[i] + b[i];
+  }
+
+  // Lox's own comparisons treat NaN as unordered, so these skip it the
+  // way a script's `if (x < min) min = x;` loop would.
+  static double min(double[] a, int n) {
+    double min = a[0];
+    for (int i = 1; i < n; i++) {
+      if (a[i] < min) min = a[i];
+    }
+    return min;
+  }
+
+  static double max(double[] a, int n) {
+    double max = a[0];
+    for (int i = 1; i < n; i++) {
+      if (a[i] > max) max = a[i];
+    }
+    return max;
+  }
+
+  static void sort(double[] a, int n) {
+    if (n >= PARALLEL_SORT_THRESHOLD) {
+      Arrays.parallelSort(a, 0, n);
+    } else {
+      Arrays.sort(a, 0, n);
+    }
+  }
+
+  // The element-wise builtins map() accepts, by name. Returns false for
+  // an unknown name.
+  static boolean map(String op, double[] a, double[] out, int n) {
+    switch (op) {
+      case "abs":
+        for (int i = 0; i < n; i++) out[i] = Math.abs(a[i]);
+        return true;
+      case "neg":
+        for (int i = 0; i < n; i++) out[i] = -a[i];
+        return true;
+      case "square":
+        for (int i = 0; i < n; i++) out[i] = a[i] * a[i];
+        return true;
+      case "sqrt":
+        for (int i = 0; i < n; i++) out[i] = Math.sqrt(a[i]);
+        return true;
+      case "floor":
+        for (int i = 0; i < n; i++) out[i] = Math.floor(a[i]);
+        return true;
+      case "ceil":
+        for (int i = 0; i < n; i++) out[i] = Math.ceil(a[i]);
+        return true;
+      case "exp":
+        for (int i = 0; i < n; i++) out[i] = Math.exp(a[i]);
+        return true;
+      case "log":
+        for (int i = 0; i < n; i++) out[i] = Math.log(a[i]);
+        return true;
+      case "sin":
+        for (int i = 0; i < n; i++) out[i] = Math.sin(a[i]);
+        return true;
+      case "cos":
+        for (int i = 0; i < n; i++) out[i] = Math.cos(a[i]);
+        return true;
+      default:
+        return false;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.yadav.lox;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Command line settings for a run, filled in by Lox.main and handed to
+// the engine when it is created. Each isolate gets its own copy.
+class Options {
+  // Roughly what a call level costs: about 200 bytes of heap and the rest
+  // of a segment thread's stack. The default depth keeps runaway
+  // recursion within about the heap's size again, so it ends in "Stack
+  // overflow." instead of the JVM running out of memory or threads.
+  private static final long BYTES_PER_CALL = 1024;
+
+  String script = null;
+  String engine = "tree";
+  int maxCallDepth = (int)Math.min(Integer.MAX_VALUE,
+      Runtime.getRuntime().maxMemory() / BYTES_PER_CALL);
+
+  // Entries per memoized function; 0 turns memoization off.
+  int memoCapacity = 0;
+  boolean stats = false;
+  boolean parallelLoops = true;
+
+  // Searched for imported modules after the importing file's directory.
+  List<Path> modulePath = new ArrayList<>();
+
+  // Writes print output on its own thread.
+  boolean asyncOutput = false;
+
+  // How many copies of the script to run at once, each in an isolate of
+  // its own.
+  int isolates = 1;
+
+  // Where print statements write and where errors are reported. The
+  // Isolate sets them up before creating the engine.
+  OutputSink output = null;
+  ErrorReporter errors = null;
+
+  Options copy() {
+    Options copy = new Options();
+    copy.script = script;
+    copy.engine = engine;
+    copy.maxCallDepth = maxCallDepth;
+    copy.memoCapacity = memoCapacity;
+    copy.stats = stats;
+    copy.parallelLoops = parallelLoops;
+    copy.modulePath = new ArrayList<>(modulePath);
+    copy.asyncOutput = asyncOutput;
+    copy.isolates = isolates;
+    copy.output = output;
+    copy.errors = errors;
+    return copy;
+  }
+}
@@ -0,0 +1,16 @@
+package com.yadav.lox;
+
+// Where a program's output goes. Writes may be buffered; nothing is
+// guaranteed to reach the underlying stream before flush().
+interface OutputSink {
+  void print(CharSequence text);
+
+  void print(CharSequence text, int start, int end);
+
+  // Writes a number the way Lox prints it.
+  void print(double number);
+
+  void newline();
+
+  void flush();
+}
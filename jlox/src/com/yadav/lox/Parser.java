@@ -9,10 +9,12 @@ import static com.yadav.lox.TokenType.*;
 class Parser {
   private static class ParseError extends RuntimeException {};
   private final List<Token> tokens;
+  private final ErrorReporter errors;
   private int current = 0;
 
-  Parser(List<Token> tokens) {
+  Parser(List<Token> tokens, ErrorReporter errors) {
     this.tokens = tokens;
+    this.errors = errors;
   }
 
   // Expr parse() {
@@ -37,6 +39,7 @@ class Parser {
       if (match(CLASS)) return classDeclaration();
       if (match(VAR)) return variableDeclaration();
       if (match(FUN)) return function("function");
+      if (match(IMPORT)) return importDeclaration();
 
       return statement();
     } catch (ParseError error) {
@@ -45,8 +48,22 @@ class Parser {
     }
   }
 
+  private Stmt importDeclaration() {
+    Token keyword = previous();
+    Token path = consume(STRING, "Expected module path after 'import'.");
+    consume(SEMICOLON, "Expected ';' after module path.");
+    return new Stmt.Import(keyword, path);
+  }
+
   private Stmt classDeclaration() {
     Token name = consume(IDENTIFIER, "Expected class name.");
+
+    Expr.Variable superclass = null;
+    if (match(LESS)) {
+      consume(IDENTIFIER, "Expected superclass name.");
+      superclass = new Expr.Variable(previous());
+    }
+
     consume(LEFT_BRACE, "Expected '{' after class name.");
 
     List<Stmt.Function> methods = new ArrayList<>();
@@ -56,7 +73,7 @@ class Parser {
 
     consume(RIGHT_BRACE, "Expected '}' after class body.");
     
-    return new Stmt.Class(name, methods);
+    return new Stmt.Class(name, superclass, methods);
   }
 
   private Stmt variableDeclaration() {
@@ -253,6 +270,9 @@ class Parser {
       } else if (expr instanceof Expr.Get) {
         Expr.Get get = (Expr.Get) expr;
         return new Expr.Set(get.object, get.name, value);
+      } else if (expr instanceof Expr.Index) {
+        Expr.Index index = (Expr.Index)expr;
+        return new Expr.IndexSet(index.object, index.bracket, index.index, value);
       }
 
       error(equals, "Invalid assignment target.");
@@ -367,7 +387,12 @@ class Parser {
       } else if (match(DOT)) {
         Token name = consume(IDENTIFIER, "Expected property name after '.'");
         expr = new Expr.Get(expr, name);
-      } 
+      } else if (match(LEFT_BRACKET)) {
+        Token bracket = previous();
+        Expr index = expression();
+        consume(RIGHT_BRACKET, "Expect ']' after index.");
+        expr = new Expr.Index(expr, bracket, index);
+      }
       else {
         break;
       }
@@ -400,6 +425,27 @@ class Parser {
       return new Expr.Literal(previous().literal);
     }
 
+    if(match(LEFT_BRACKET)) {
+      Token bracket = previous();
+      List<Expr> elements = new ArrayList<>();
+      if (!check(RIGHT_BRACKET)) {
+        do {
+          elements.add(expression());
+        } while (match(COMMA));
+      }
+      consume(RIGHT_BRACKET, "Expect ']' after array elements.");
+      return new Expr.Array(bracket, elements);
+    }
+
+    if(match(SUPER)) {
+      Token keyword = previous();
+      consume(DOT, "Expected '.' after 'super'.");
+      Token method = consume(IDENTIFIER, "Expected superclass method name.");
+      return new Expr.Super(keyword, method);
+    }
+
+    if(match(THIS)) return new Expr.This(previous());
+
     if(match(IDENTIFIER)) {
       return new Expr.Variable(previous());
     }
@@ -420,7 +466,7 @@ class Parser {
   }
 
   private ParseError error(Token token, String message) {
-    Lox.error(token, message);
+    errors.error(token, message);
     return new ParseError();
   }
 
@@ -433,6 +479,7 @@ class Parser {
       switch (peek().type) {
         case CLASS:
         case FUN:
+        case IMPORT:
         case VAR:
         case FOR:
         case IF:
@@ -0,0 +1,134 @@
+package com.yadav.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The eventual result of an asynchronous native. Promises are only ever
+// settled, and their callbacks only run, on the interpreter's thread,
+// from the event loop; the background work that produces the result
+// never touches them directly.
+class Promise implements NativeObject {
+  private final EventLoop loop;
+  private boolean settled = false;
+  private Object value;
+  // Non-null once the promise has failed.
+  private String error;
+  private List<Runnable> reactions = new ArrayList<>();
+
+  Promise(EventLoop loop) {
+    this.loop = loop;
+  }
+
+  boolean belongsTo(EventLoop loop) {
+    return this.loop == loop;
+  }
+
+  boolean isSettled() {
+    return settled;
+  }
+
+  Object value() {
+    return value;
+  }
+
+  String error() {
+    return error;
+  }
+
+  void resolve(Object value) {
+    // A callback that returned a promise: follow it instead.
+    if (value instanceof Promise) {
+      Promise inner = (Promise)value;
+      inner.whenSettled(() -> {
+        if (inner.error != null) {
+          reject(inner.error);
+        } else {
+          resolve(inner.value);
+        }
+      });
+      return;
+    }
+    settle(value, null);
+  }
+
+  void reject(String error) {
+    settle(null, error);
+  }
+
+  private void settle(Object value, String error) {
+    if (settled) return;
+    settled = true;
+    this.value = value;
+    this.error = error;
+
+    List<Runnable> ready = reactions;
+    reactions = null;
+    for (Runnable reaction : ready) {
+      loop.post(reaction);
+    }
+  }
+
+  // Runs the reaction from the event loop once the promise settles, even
+  // if it already has.
+  private void whenSettled(Runnable reaction) {
+    if (settled) {
+      loop.post(reaction);
+    } else {
+      reactions.add(reaction);
+    }
+  }
+
+  // Calls the callback with the value and returns a promise of what it
+  // returns. A failure skips the callback and carries on down the chain.
+  // An error in the callback itself is reported at the then() call.
+  Promise then(Interpreter interpreter, Token site, LoxCallable callback) {
+    Promise next = new Promise(loop);
+    whenSettled(() -> {
+      if (error != null) {
+        next.reject(error);
+      } else if (callback.arity() == 0) {
+        next.resolve(interpreter.callFrom(site, callback));
+      } else {
+        next.resolve(interpreter.callFrom(site, callback, value));
+      }
+    });
+    return next;
+  }
+
+  @Override
+  public Object get(Token name) {
+    if (!name.lexeme.equals("then")) {
+      throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+
+    return new LoxCallable() {
+      @Override
+      public int arity() {
+        return 1;
+      }
+
+      @Override
+      public Object call1(Interpreter interpreter, Object callback) {
+        if (!(callback instanceof LoxCallable) || ((LoxCallable)callback).arity() > 1) {
+          throw new RuntimeError(name, "Callback must be a function of zero or one arguments.");
+        }
+        return then(interpreter, name, (LoxCallable)callback);
+      }
+
+      @Override
+      public Object callN(Interpreter interpreter, Object[] arguments) {
+        return call1(interpreter, arguments[0]);
+      }
+
+      @Override
+      public String toString() {
+        return "<native fn>";
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "<promise>";
+  }
+}
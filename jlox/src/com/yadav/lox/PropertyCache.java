@@ -0,0 +1,70 @@
+package com.yadav.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+// Inline cache for a property access site. It remembers where the
+// property lives for the last few shapes seen at this site, so a hit is
+// a shape comparison and an array access. Sites that see more shapes
+// than that are megamorphic and stop adding entries.
+//
+// Entries are immutable and the array is replaced rather than updated,
+// with a release and read back with an acquire, so a site shared between
+// tasks only ever misses spuriously.
+class PropertyCache {
+  private static final int MAX_ENTRIES = 4;
+  private static final Entry[] EMPTY = new Entry[0];
+
+  static class Entry {
+    final Shape shape;
+    final int slot;
+
+    // For assignments that add a field: the shape the instance moves to.
+    final Shape transition;
+
+    // For reads that find a method rather than a field. A shape belongs
+    // to a single class, so the shape check covers the class too.
+    final LoxFunction method;
+
+    Entry(Shape shape, int slot, Shape transition) {
+      this(shape, slot, transition, null);
+    }
+
+    Entry(Shape shape, int slot, Shape transition, LoxFunction method) {
+      this.shape = shape;
+      this.slot = slot;
+      this.transition = transition;
+      this.method = method;
+    }
+  }
+
+  private static final VarHandle ENTRIES;
+
+  static {
+    try {
+      ENTRIES = MethodHandles.lookup().findVarHandle(PropertyCache.class, "entries", Entry[].class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private Entry[] entries = EMPTY;
+
+  Entry lookup(Shape shape) {
+    Entry[] current = (Entry[])ENTRIES.getAcquire(this);
+    for (Entry entry : current) {
+      if (entry != null && entry.shape == shape) return entry;
+    }
+    return null;
+  }
+
+  void add(Entry entry) {
+    Entry[] current = (Entry[])ENTRIES.getAcquire(this);
+    if (current.length >= MAX_ENTRIES) return;
+
+    Entry[] updated = Arrays.copyOf(current, current.length + 1);
+    updated[current.length] = entry;
+    ENTRIES.setRelease(this, updated);
+  }
+}
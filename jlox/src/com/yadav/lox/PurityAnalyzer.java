@@ -0,0 +1,338 @@
+package com.yadav.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Finds the functions whose result depends only on their arguments, so
+// calls to them can be memoized. A function is pure when its body
+//
+//  - doesn't print, declare functions or classes, or read or write
+//    instance fields,
+//  - only reads and assigns its own parameters and locals, and
+//  - only calls pure functions, by a name that is declared exactly once
+//    in the program with 'fun' and never assigned.
+//
+// The last rule is checked by name across the whole program, so the
+// analysis must see every statement that could rebind those names,
+// including those of imported modules, which share the globals.
+class PurityAnalyzer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+  private static class Facts {
+    final Stmt.Function function;
+    final Set<String> callees = new HashSet<>();
+    boolean pure = true;
+    int scopes = 1;
+
+    Facts(Stmt.Function function) {
+      this.function = function;
+    }
+  }
+
+  private final Map<Stmt.Import, LoxModule> imports;
+  private final Set<LoxModule> modules = new HashSet<>();
+  private final Map<String, Integer> declarations = new HashMap<>();
+  private final Map<String, Stmt.Function> functions = new HashMap<>();
+  private final Set<String> assigned = new HashSet<>();
+  private final List<Facts> analyzed = new ArrayList<>();
+  private final Deque<Facts> enclosing = new ArrayDeque<>();
+
+  // The resolution of the unit being analyzed, swapped while in a module.
+  private Map<Expr, Integer> locals;
+
+  PurityAnalyzer(Map<Expr, Integer> locals, Map<Stmt.Import, LoxModule> imports) {
+    this.locals = locals;
+    this.imports = imports;
+  }
+
+  Set<Stmt.Function> pureFunctions(List<Stmt> statements) {
+    analyze(statements);
+
+    // Start from the functions that are pure on their own, then drop
+    // those calling anything that isn't, until nothing changes.
+    Map<String, Facts> candidates = new HashMap<>();
+    for (Facts facts : analyzed) {
+      if (facts.pure && isStable(facts.function.name.lexeme)) {
+        candidates.put(facts.function.name.lexeme, facts);
+      }
+    }
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Facts facts : new ArrayList<>(candidates.values())) {
+        for (String callee : facts.callees) {
+          if (!candidates.containsKey(callee)) {
+            candidates.remove(facts.function.name.lexeme);
+            changed = true;
+            break;
+          }
+        }
+      }
+    }
+
+    Set<Stmt.Function> pure = new HashSet<>();
+    for (Facts facts : candidates.values()) {
+      pure.add(facts.function);
+    }
+    return pure;
+  }
+
+  private boolean isStable(String name) {
+    return declarations.getOrDefault(name, 0) == 1
+        && functions.containsKey(name)
+        && !assigned.contains(name);
+  }
+
+  private void analyze(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      analyze(statement);
+    }
+  }
+
+  private void analyze(Stmt statement) {
+    if (statement != null) statement.accept(this);
+  }
+
+  private void analyze(Expr expression) {
+    expression.accept(this);
+  }
+
+  private void declare(Token name) {
+    declarations.merge(name.lexeme, 1, Integer::sum);
+  }
+
+  private void impure() {
+    if (!enclosing.isEmpty()) enclosing.peek().pure = false;
+  }
+
+  // True when the variable resolved to a scope inside the function being
+  // analyzed rather than to an enclosing function or the globals.
+  private boolean isLocal(Expr expr) {
+    if (enclosing.isEmpty()) return false;
+    Integer distance = locals.get(expr);
+    return distance != null && distance < enclosing.peek().scopes;
+  }
+
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    if (!enclosing.isEmpty()) enclosing.peek().scopes++;
+    analyze(stmt.statements);
+    if (!enclosing.isEmpty()) enclosing.peek().scopes--;
+    return null;
+  }
+
+  @Override
+  public Void visitClassStmt(Stmt.Class stmt) {
+    declare(stmt.name);
+    impure();
+    if (stmt.superclass != null) analyze(stmt.superclass);
+    for (Stmt.Function method : stmt.methods) {
+      for (Token param : method.params) {
+        declare(param);
+      }
+      analyze(method.body);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    declare(stmt.name);
+    functions.put(stmt.name.lexeme, stmt);
+    impure();
+
+    for (Token param : stmt.params) {
+      declare(param);
+    }
+
+    Facts facts = new Facts(stmt);
+    analyzed.add(facts);
+    enclosing.push(facts);
+    analyze(stmt.body);
+    enclosing.pop();
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    analyze(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    analyze(stmt.condition);
+    analyze(stmt.thenBranch);
+    analyze(stmt.elseBranch);
+    return null;
+  }
+
+  @Override
+  public Void visitImportStmt(Stmt.Import stmt) {
+    LoxModule module = imports.get(stmt);
+    if (module == null || !modules.add(module)) return null;
+
+    Map<Expr, Integer> previous = locals;
+    locals = module.resolution.locals;
+    analyze(module.statements);
+    locals = previous;
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    impure();
+    analyze(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    if (stmt.value != null) analyze(stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    declare(stmt.name);
+    if (stmt.initializer != null) analyze(stmt.initializer);
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    analyze(stmt.condition);
+    analyze(stmt.body);
+    return null;
+  }
+
+  @Override
+  public Void visitTernaryExpr(Expr.Ternary expr) {
+    analyze(expr.left);
+    analyze(expr.mid);
+    analyze(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpr(Expr.Binary expr) {
+    analyze(expr.left);
+    analyze(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitCallExpr(Expr.Call expr) {
+    if (expr.callee instanceof Expr.Variable && !isLocal(expr.callee)) {
+      if (!enclosing.isEmpty()) {
+        enclosing.peek().callees.add(((Expr.Variable)expr.callee).name.lexeme);
+      }
+    } else {
+      impure();
+      analyze(expr.callee);
+    }
+
+    for (Expr argument : expr.arguments) {
+      analyze(argument);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitGetExpr(Expr.Get expr) {
+    impure();
+    analyze(expr.object);
+    return null;
+  }
+
+  @Override
+  public Void visitSetExpr(Expr.Set expr) {
+    impure();
+    analyze(expr.object);
+    analyze(expr.value);
+    return null;
+  }
+
+  // Arrays are mutable, and a memoized call would hand every caller the
+  // same one, so building or touching an array is impure.
+  @Override
+  public Void visitArrayExpr(Expr.Array expr) {
+    impure();
+    for (Expr element : expr.elements) {
+      analyze(element);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitIndexExpr(Expr.Index expr) {
+    impure();
+    analyze(expr.object);
+    analyze(expr.index);
+    return null;
+  }
+
+  @Override
+  public Void visitIndexSetExpr(Expr.IndexSet expr) {
+    impure();
+    analyze(expr.object);
+    analyze(expr.index);
+    analyze(expr.value);
+    return null;
+  }
+
+  @Override
+  public Void visitSuperExpr(Expr.Super expr) {
+    impure();
+    return null;
+  }
+
+  @Override
+  public Void visitThisExpr(Expr.This expr) {
+    impure();
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpr(Expr.Grouping expr) {
+    analyze(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpr(Expr.Literal expr) {
+    return null;
+  }
+
+  @Override
+  public Void visitLogicalExpr(Expr.Logical expr) {
+    analyze(expr.left);
+    analyze(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpr(Expr.Unary expr) {
+    analyze(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpr(Expr.Variable expr) {
+    if (!isLocal(expr)) impure();
+    return null;
+  }
+
+  @Override
+  public Void visitAssignExpr(Expr.Assign expr) {
+    assigned.add(expr.name.lexeme);
+    if (!isLocal(expr)) impure();
+    analyze(expr.value);
+    return null;
+  }
+}
@@ -0,0 +1,317 @@
+package com.yadav.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.DoubleUnaryOperator;
+
+// A counted while loop whose body only adds a function of the counter
+// to an accumulator, such as
+//
+//   while (i < n) {
+//     sum = sum + i * i;
+//     i = i + 1;
+//   }
+//
+// (or the equivalent 'for' loop). Such loops are summed in chunks on the
+// fork/join pool. Floating point addition isn't associative, so the
+// parallel sum is only used when every partial sum the sequential loop
+// would compute is an integer no larger than 2^53: those additions are
+// exact, and any order gives the bit-identical result. Otherwise run()
+// declines and the loop is interpreted as usual.
+class ReductionLoop {
+  private static final double MAX_EXACT = 9007199254740992.0; // 2^53
+  private static final long PARALLEL_THRESHOLD = 100_000;
+  private static final long CHUNK_ITERATIONS = 16_384;
+
+  private final Token counter;
+  private final Integer counterDistance;
+  private final Token accumulator;
+  private final Integer accumulatorDistance;
+  private final Token limitName;
+  private final Integer limitDistance;
+  private final double limitValue;
+  private final boolean inclusive;
+  private final long step;
+  private final DoubleUnaryOperator term;
+
+  private ReductionLoop(Token counter, Integer counterDistance,
+                        Token accumulator, Integer accumulatorDistance,
+                        Token limitName, Integer limitDistance, double limitValue,
+                        boolean inclusive, long step, DoubleUnaryOperator term) {
+    this.counter = counter;
+    this.counterDistance = counterDistance;
+    this.accumulator = accumulator;
+    this.accumulatorDistance = accumulatorDistance;
+    this.limitName = limitName;
+    this.limitDistance = limitDistance;
+    this.limitValue = limitValue;
+    this.inclusive = inclusive;
+    this.step = step;
+    this.term = term;
+  }
+
+  // Returns null unless the loop has exactly the shape described above.
+  // Distances are adjusted to count from the environment the while
+  // statement itself runs in.
+  static ReductionLoop match(Stmt.While loop, Map<Expr, Integer> locals) {
+    if (!(loop.condition instanceof Expr.Binary)) return null;
+    Expr.Binary condition = (Expr.Binary)loop.condition;
+    if (condition.operator.type != TokenType.LESS && condition.operator.type != TokenType.LESS_EQUAL) return null;
+    if (!(condition.left instanceof Expr.Variable)) return null;
+
+    Token counter = ((Expr.Variable)condition.left).name;
+    Integer counterDistance = locals.get(condition.left);
+
+    Token limitName = null;
+    Integer limitDistance = null;
+    double limitValue = 0;
+    if (condition.right instanceof Expr.Variable) {
+      limitName = ((Expr.Variable)condition.right).name;
+      limitDistance = locals.get(condition.right);
+    } else if (condition.right instanceof Expr.Literal
+        && ((Expr.Literal)condition.right).value instanceof Double) {
+      limitValue = (double)((Expr.Literal)condition.right).value;
+    } else {
+      return null;
+    }
+
+    List<Stmt.Expression> body = new ArrayList<>();
+    List<Integer> depths = new ArrayList<>();
+    if (!flatten(loop.body, 0, body, depths) || body.size() != 2) return null;
+
+    // sum = sum + term
+    if (!(body.get(0).expression instanceof Expr.Assign)) return null;
+    Expr.Assign accumulate = (Expr.Assign)body.get(0).expression;
+    Token accumulator = accumulate.name;
+    Integer accumulatorDistance = outer(locals.get(accumulate), depths.get(0));
+    if (accumulator.lexeme.equals(counter.lexeme)) return null;
+    if (limitName != null && limitName.lexeme.equals(accumulator.lexeme)) return null;
+    if (!(accumulate.value instanceof Expr.Binary)) return null;
+
+    Expr.Binary sum = (Expr.Binary)accumulate.value;
+    if (sum.operator.type != TokenType.PLUS) return null;
+    Expr termExpr;
+    if (isVariable(sum.left, accumulator, accumulatorDistance, locals, depths.get(0))) {
+      termExpr = sum.right;
+    } else if (isVariable(sum.right, accumulator, accumulatorDistance, locals, depths.get(0))) {
+      termExpr = sum.left;
+    } else {
+      return null;
+    }
+
+    DoubleUnaryOperator term = compileTerm(termExpr, counter, counterDistance, locals, depths.get(0));
+    if (term == null) return null;
+
+    // i = i + step
+    if (!(body.get(1).expression instanceof Expr.Assign)) return null;
+    Expr.Assign increment = (Expr.Assign)body.get(1).expression;
+    if (!increment.name.lexeme.equals(counter.lexeme)) return null;
+    if (!same(outer(locals.get(increment), depths.get(1)), counterDistance)) return null;
+    if (!(increment.value instanceof Expr.Binary)) return null;
+
+    Expr.Binary next = (Expr.Binary)increment.value;
+    if (next.operator.type != TokenType.PLUS) return null;
+    Expr stepExpr;
+    if (isVariable(next.left, counter, counterDistance, locals, depths.get(1))) {
+      stepExpr = next.right;
+    } else if (isVariable(next.right, counter, counterDistance, locals, depths.get(1))) {
+      stepExpr = next.left;
+    } else {
+      return null;
+    }
+    if (!(stepExpr instanceof Expr.Literal) || !(((Expr.Literal)stepExpr).value instanceof Double)) return null;
+    double step = (double)((Expr.Literal)stepExpr).value;
+    if (step < 1 || step != Math.rint(step) || step > MAX_EXACT) return null;
+
+    return new ReductionLoop(counter, counterDistance, accumulator, accumulatorDistance,
+        limitName, limitDistance, limitValue,
+        condition.operator.type == TokenType.LESS_EQUAL, (long)step, term);
+  }
+
+  // Collects the expression statements of the body. Blocks are allowed
+  // as long as they declare nothing, since each one adds an environment
+  // to the distance of the variables inside it.
+  private static boolean flatten(Stmt stmt, int depth, List<Stmt.Expression> body, List<Integer> depths) {
+    if (stmt instanceof Stmt.Expression) {
+      body.add((Stmt.Expression)stmt);
+      depths.add(depth);
+      return true;
+    }
+
+    if (!(stmt instanceof Stmt.Block)) return false;
+    for (Stmt statement : ((Stmt.Block)stmt).statements) {
+      if (!flatten(statement, depth + 1, body, depths)) return false;
+    }
+    return true;
+  }
+
+  private static Integer outer(Integer distance, int depth) {
+    return distance == null ? null : distance - depth;
+  }
+
+  private static boolean same(Integer a, Integer b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  private static boolean isVariable(Expr expr, Token name, Integer distance,
+                                    Map<Expr, Integer> locals, int depth) {
+    return expr instanceof Expr.Variable
+        && ((Expr.Variable)expr).name.lexeme.equals(name.lexeme)
+        && same(outer(locals.get(expr), depth), distance);
+  }
+
+  // Turns an arithmetic expression over the counter and number literals
+  // into a function of the counter, computing exactly what the
+  // interpreter would. Anything else disqualifies the loop.
+  private static DoubleUnaryOperator compileTerm(Expr expr, Token counter, Integer distance,
+                                                 Map<Expr, Integer> locals, int depth) {
+    if (expr instanceof Expr.Literal) {
+      Object value = ((Expr.Literal)expr).value;
+      if (!(value instanceof Double)) return null;
+      double constant = (double)value;
+      return i -> constant;
+    }
+
+    if (isVariable(expr, counter, distance, locals, depth)) return i -> i;
+
+    if (expr instanceof Expr.Grouping) {
+      return compileTerm(((Expr.Grouping)expr).expression, counter, distance, locals, depth);
+    }
+
+    if (expr instanceof Expr.Unary) {
+      Expr.Unary unary = (Expr.Unary)expr;
+      if (unary.operator.type != TokenType.MINUS) return null;
+      DoubleUnaryOperator right = compileTerm(unary.right, counter, distance, locals, depth);
+      if (right == null) return null;
+      return i -> -right.applyAsDouble(i);
+    }
+
+    if (expr instanceof Expr.Binary) {
+      Expr.Binary binary = (Expr.Binary)expr;
+      DoubleUnaryOperator left = compileTerm(binary.left, counter, distance, locals, depth);
+      DoubleUnaryOperator right = compileTerm(binary.right, counter, distance, locals, depth);
+      if (left == null || right == null) return null;
+
+      switch (binary.operator.type) {
+        case PLUS: return i -> left.applyAsDouble(i) + right.applyAsDouble(i);
+        case MINUS: return i -> left.applyAsDouble(i) - right.applyAsDouble(i);
+        case STAR: return i -> left.applyAsDouble(i) * right.applyAsDouble(i);
+        case SLASH: return i -> left.applyAsDouble(i) / right.applyAsDouble(i);
+        default: return null;
+      }
+    }
+
+    return null;
+  }
+
+  private static boolean isExactInteger(double value) {
+    return value == Math.rint(value) && Math.abs(value) <= MAX_EXACT;
+  }
+
+  // Runs the whole loop and stores the final accumulator and counter.
+  // Returns false without changing anything when the parallel sum might
+  // differ from the sequential one or the loop is too short to bother.
+  boolean run(Interpreter interpreter) {
+    Object start = interpreter.getVariable(counter, counterDistance);
+    Object initial = interpreter.getVariable(accumulator, accumulatorDistance);
+    Object limit = limitName == null ? limitValue : interpreter.getVariable(limitName, limitDistance);
+    if (!(start instanceof Double) || !(initial instanceof Double) || !(limit instanceof Double)) {
+      return false;
+    }
+
+    double first = (double)start;
+    double sum = (double)initial;
+    double bound = (double)limit;
+    // Written so that a NaN limit, which no comparison is true of, fails.
+    if (!isExactInteger(first) || !isExactInteger(sum) || !(Math.abs(bound) <= MAX_EXACT)) return false;
+
+    // -0.0 only survives the sequential loop if every term is -0.0 too.
+    if (sum == 0 && 1 / sum < 0) return false;
+
+    long last = inclusive || bound != Math.floor(bound)
+        ? (long)Math.floor(bound)
+        : (long)bound - 1;
+    if (last < (long)first) return false;
+
+    long iterations = (last - (long)first) / step + 1;
+    if (iterations < PARALLEL_THRESHOLD) return false;
+    long end = (long)first + iterations * step;
+    if (end > MAX_EXACT) return false;
+
+    Partial total = ForkJoinPool.commonPool().invoke(new Chunk((long)first, 0, iterations));
+    if (!total.exact) return false;
+
+    long result;
+    try {
+      if (Math.addExact(Math.abs((long)sum), total.magnitude) > (long)MAX_EXACT) return false;
+      result = (long)sum + total.sum;
+    } catch (ArithmeticException e) {
+      return false;
+    }
+
+    interpreter.setVariable(accumulator, accumulatorDistance, (double)result);
+    interpreter.setVariable(counter, counterDistance, (double)end);
+    return true;
+  }
+
+  private static class Partial {
+    final long sum;
+    final long magnitude;
+    final boolean exact;
+
+    Partial(long sum, long magnitude, boolean exact) {
+      this.sum = sum;
+      this.magnitude = magnitude;
+      this.exact = exact;
+    }
+  }
+
+  // Sums the terms of iterations [from, to), along with the sum of their
+  // magnitudes, which bounds every partial sum the sequential loop sees.
+  private class Chunk extends RecursiveTask<Partial> {
+    private final long first;
+    private final long from;
+    private final long to;
+
+    Chunk(long first, long from, long to) {
+      this.first = first;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Partial compute() {
+      if (to - from > CHUNK_ITERATIONS) {
+        long middle = from + (to - from) / 2;
+        Chunk left = new Chunk(first, from, middle);
+        left.fork();
+        Partial right = new Chunk(first, middle, to).compute();
+        Partial leftResult = left.join();
+        if (!leftResult.exact || !right.exact) return new Partial(0, 0, false);
+        try {
+          return new Partial(Math.addExact(leftResult.sum, right.sum),
+              Math.addExact(leftResult.magnitude, right.magnitude), true);
+        } catch (ArithmeticException e) {
+          return new Partial(0, 0, false);
+        }
+      }
+
+      long sum = 0;
+      long magnitude = 0;
+      try {
+        for (long k = from; k < to; k++) {
+          double value = term.applyAsDouble((double)(first + k * step));
+          if (!isExactInteger(value)) return new Partial(0, 0, false);
+          sum += (long)value;
+          magnitude = Math.addExact(magnitude, Math.abs((long)value));
+        }
+      } catch (ArithmeticException e) {
+        return new Partial(0, 0, false);
+      }
+      return new Partial(sum, magnitude, true);
+    }
+  }
+}
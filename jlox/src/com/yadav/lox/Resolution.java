@@ -0,0 +1,40 @@
+package com.yadav.lox;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// What the Resolver worked out about one compiled unit, a program or a
+// module: how far away each local variable is, which calls are in tail
+// position and how many property accesses there are. It doesn't change
+// after the Resolver hands it over, so any number of interpreters can run
+// the unit at once.
+final class Resolution {
+  // Plain hash maps rather than Map.copyOf(), whose lookups are slower on
+  // the variable access path. Nothing writes to them after construction.
+  final Map<Expr, Integer> locals;
+  final Set<Expr.Call> tailCalls;
+
+  // Expr.Get and Expr.Set nodes are numbered from 0 to sites - 1, so an
+  // interpreter can keep their inline caches in an array of its own.
+  final int sites;
+
+  // Which loops ReductionLoop can run in parallel, worked out the first
+  // time each loop runs. The answer only depends on the tree, so it is
+  // shared like the rest.
+  private final Map<Stmt.While, Optional<ReductionLoop>> reductionLoops = new ConcurrentHashMap<>();
+
+  Resolution(Map<Expr, Integer> locals, Set<Expr.Call> tailCalls, int sites) {
+    this.locals = new HashMap<>(locals);
+    this.tailCalls = new HashSet<>(tailCalls);
+    this.sites = sites;
+  }
+
+  Optional<ReductionLoop> reductionLoop(Stmt.While loop) {
+    return reductionLoops.computeIfAbsent(loop,
+        key -> Optional.ofNullable(ReductionLoop.match(key, locals)));
+  }
+}
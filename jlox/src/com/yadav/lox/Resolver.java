@@ -1,8 +1,10 @@
 package com.yadav.lox;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 import com.yadav.lox.Expr.Assign;
@@ -18,6 +20,7 @@ import com.yadav.lox.Stmt.Block;
 import com.yadav.lox.Stmt.Expression;
 import com.yadav.lox.Stmt.Function;
 import com.yadav.lox.Stmt.If;
+import com.yadav.lox.Stmt.Import;
 import com.yadav.lox.Stmt.Print;
 import com.yadav.lox.Stmt.Return;
 import com.yadav.lox.Stmt.Var;
@@ -25,17 +28,35 @@ import com.yadav.lox.Stmt.While;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
-  private final Interpreter interpreter;
+  private final ErrorReporter errors;
+  private final Map<Expr, Integer> locals = new HashMap<>();
+  private final Set<Expr.Call> tailCalls = new HashSet<>();
+  private int sites = 0;
   private final Stack<Map<String, Boolean>> scopes = new Stack<>();
   private FunctionType currentFunction = FunctionType.NONE;
+  private ClassType currentClass = ClassType.NONE;
 
-  Resolver(Interpreter interpreter) {
-    this.interpreter = interpreter;
+  Resolver(ErrorReporter errors) {
+    this.errors = errors;
+  }
+
+  // Everything worked out by resolve(), once it has been called on the
+  // whole unit.
+  Resolution resolution() {
+    return new Resolution(locals, tailCalls, sites);
   }
 
   private enum FunctionType {
     NONE,
-    FUNCTION
+    FUNCTION,
+    INITIALIZER,
+    METHOD
+  }
+
+  private enum ClassType {
+    NONE,
+    CLASS,
+    SUBCLASS
   }
 
 	@Override
@@ -70,8 +91,36 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
   @Override
   public Void visitClassStmt(Stmt.Class stmt) {
+    ClassType enclosingClass = currentClass;
+    currentClass = ClassType.CLASS;
+
     declare(stmt.name);
     define(stmt.name);
+
+    if (stmt.superclass != null) {
+      if (stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
+        errors.error(stmt.superclass.name, "A class can't inherit from itself.");
+      }
+      currentClass = ClassType.SUBCLASS;
+      resolve(stmt.superclass);
+
+      // 'super' lives in an environment the interpreter creates once per
+      // class, wrapped around the methods' closure.
+      beginScope();
+      scopes.peek().put("super", true);
+    }
+
+    for (Stmt.Function method : stmt.methods) {
+      FunctionType declaration = FunctionType.METHOD;
+      if (method.name.lexeme.equals("init")) {
+        declaration = FunctionType.INITIALIZER;
+      }
+      resolveFunction(method, declaration);
+    }
+
+    if (stmt.superclass != null) endScope();
+
+    currentClass = enclosingClass;
     return null;
   }
 
@@ -88,6 +137,13 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     beginScope();
     FunctionType enclosingType = currentFunction;
     currentFunction = type;
+
+    // A method's receiver is bound in the same frame as its parameters,
+    // so binding a method doesn't need an environment of its own.
+    if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+      scopes.peek().put("this", true);
+    }
+
     for (Token param : stmt.params) {
       declare(param);
       define(param);
@@ -111,6 +167,16 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     return null;
 	}
 
+	@Override
+	public Void visitImportStmt(Import stmt) {
+    // The ModuleLoader only looks for imports at the top level, and a
+    // module's globals are only visible once it has run.
+    if (!scopes.isEmpty() || currentFunction != FunctionType.NONE) {
+      errors.error(stmt.keyword, "Can't import outside top-level code.");
+    }
+    return null;
+	}
+
 	@Override
 	public Void visitPrintStmt(Print stmt) {
     resolve(stmt.expression);
@@ -120,12 +186,21 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 	@Override
 	public Void visitReturnStmt(Return stmt) {
     if (currentFunction == FunctionType.NONE) {
-      Lox.error(stmt.keyword, "Can't return from a top-level code.");
+      errors.error(stmt.keyword, "Can't return from a top-level code.");
     }
     if (stmt.value != null) {
+      if (currentFunction == FunctionType.INITIALIZER) {
+        errors.error(stmt.keyword, "Can't return a value from an initializer.");
+      }
       resolve(stmt.value);
     }
 
+    // Nothing runs in a function after its return value is computed, so
+    // a returned call can reuse the caller's frame.
+    if (stmt.value instanceof Expr.Call) {
+      tailCalls.add((Expr.Call)stmt.value);
+    }
+
     return null;
 	}
 
@@ -145,7 +220,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     Map<String, Boolean> scope = scopes.peek();
 
     if (scope.containsKey(name.lexeme)) {
-      Lox.error(name, "Already a variable with the name in this scope.");
+      errors.error(name, "Already a variable with the name in this scope.");
     }
 
     scope.put(name.lexeme, false);
@@ -191,6 +266,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
   @Override
   public Void visitGetExpr(Expr.Get expr) {
+    expr.site = sites++;
     resolve(expr.object);
     return null;
   }
@@ -215,8 +291,55 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
   @Override
   public Void visitSetExpr(Expr.Set expr) {
+    expr.site = sites++;
+    resolve(expr.value);
+    resolve(expr.object);
+    return null;
+  }
+
+  @Override
+  public Void visitArrayExpr(Expr.Array expr) {
+    for (Expr element : expr.elements) {
+      resolve(element);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitIndexExpr(Expr.Index expr) {
+    resolve(expr.object);
+    resolve(expr.index);
+    return null;
+  }
+
+  @Override
+  public Void visitIndexSetExpr(Expr.IndexSet expr) {
     resolve(expr.value);
     resolve(expr.object);
+    resolve(expr.index);
+    return null;
+  }
+
+  @Override
+  public Void visitSuperExpr(Expr.Super expr) {
+    if (currentClass == ClassType.NONE) {
+      errors.error(expr.keyword, "Can't use 'super' outside of a class.");
+    } else if (currentClass != ClassType.SUBCLASS) {
+      errors.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+    }
+
+    resolveLocal(expr, expr.keyword);
+    return null;
+  }
+
+  @Override
+  public Void visitThisExpr(Expr.This expr) {
+    if (currentClass == ClassType.NONE) {
+      errors.error(expr.keyword, "Can't use 'this' outside of a class.");
+      return null;
+    }
+
+    resolveLocal(expr, expr.keyword);
     return null;
   }
 
@@ -229,7 +352,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 	@Override
 	public Void visitVariableExpr(Variable expr) {
     if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-      Lox.error(expr.name, "Can't read local variable in it's own initializer");
+      errors.error(expr.name, "Can't read local variable in it's own initializer");
     }
     resolveLocal(expr, expr.name);
     return null;
@@ -245,7 +368,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
   private void resolveLocal(Expr expr, Token name) {
     for (int i = scopes.size() - 1; i >= 0; i--) {
       if (scopes.get(i).containsKey(name.lexeme)) {
-        interpreter.resolve(expr, scopes.size() - 1 - i);
+        locals.put(expr, scopes.size() - 1 - i);
         return;
       }
     }
@@ -8,6 +8,7 @@ import java.util.Map;
 public class Scanner {
     public final String source;
     public final List<Token> tokens = new ArrayList<>();
+    private final ErrorReporter errors;
     private int start = 0;
     private int current = 0;
     private int line = 1;
@@ -23,6 +24,7 @@ public class Scanner {
         keywords.put("for", TokenType.FOR);
         keywords.put("fun", TokenType.FUN);
         keywords.put("if", TokenType.IF);
+        keywords.put("import", TokenType.IMPORT);
         keywords.put("nil", TokenType.NIL);
         keywords.put("or", TokenType.OR);
         keywords.put("print", TokenType.PRINT);
@@ -34,8 +36,9 @@ public class Scanner {
         keywords.put("while", TokenType.WHILE);
     }
 
-    public Scanner(String source) {
+    Scanner(String source, ErrorReporter errors) {
         this.source = source;
+        this.errors = errors;
     }
 
     List<Token> scanTokens() {
@@ -86,7 +89,7 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            errors.error(line, "Unterminated string.");
             return;
         }
 
@@ -95,7 +98,7 @@ public class Scanner {
 
         // Trim the surrounding quotes.
         String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        addToken(TokenType.STRING, LoxString.intern(value));
     }
 
     private boolean isDigit(char c) {
@@ -164,6 +167,8 @@ public class Scanner {
             case ')': addToken(TokenType.RIGHT_PAREN); break;
             case '{': addToken(TokenType.LEFT_BRACE); break;
             case '}': addToken(TokenType.RIGHT_BRACE); break;
+            case '[': addToken(TokenType.LEFT_BRACKET); break;
+            case ']': addToken(TokenType.RIGHT_BRACKET); break;
             case ',': addToken(TokenType.COMMA); break;
             case '.': addToken(TokenType.DOT); break;
             case '-': addToken(TokenType.MINUS); break;
@@ -213,7 +218,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    errors.error(line, "Unexpected character.");
                 }
                 break;
         }
@@ -0,0 +1,54 @@
+package com.yadav.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A hidden class: the field layout shared by every instance that got
+// the same fields in the same order. Each class has its own root shape,
+// so a shape also identifies the instance's class. Adding a field moves
+// an instance along a transition to the next shape, and the transitions
+// are shared, so instances built the same way end up with the same
+// shape and inline caches can key on it.
+class Shape {
+  private final Map<String, Integer> slots;
+  private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+  // Volatile so that a task never sees the array before it's filled in.
+  private volatile String[] names;
+
+  Shape() {
+    this.slots = new HashMap<>();
+  }
+
+  private Shape(Shape parent, String field) {
+    this.slots = new HashMap<>(parent.slots);
+    this.slots.put(field, parent.size());
+  }
+
+  // Field names in slot order, built the first time they're asked for.
+  String[] names() {
+    String[] result = names;
+    if (result == null) {
+      result = new String[slots.size()];
+      for (Map.Entry<String, Integer> slot : slots.entrySet()) {
+        result[slot.getValue()] = slot.getKey();
+      }
+      names = result;
+    }
+    return result;
+  }
+
+  int size() {
+    return slots.size();
+  }
+
+  // The index of the field in the instance's storage, or -1.
+  int slot(String field) {
+    Integer slot = slots.get(field);
+    return slot == null ? -1 : slot;
+  }
+
+  Shape with(String field) {
+    return transitions.computeIfAbsent(field, name -> new Shape(this, name));
+  }
+}
@@ -0,0 +1,117 @@
+package com.yadav.lox;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// A thread with a large stack that runs the calls of one depth band for
+// an interpreter (see Interpreter.callOnNewSegment). It outlives the
+// calls it runs, so a loop whose calls cross into the band over and over
+// hands each one to a waiting thread instead of starting a thread per
+// call. A segment that sits idle for a while retires and its thread
+// ends; the interpreter starts a new one if it needs the band again.
+final class StackSegment implements Runnable {
+  private static final long STACK_SIZE = 64L * 1024 * 1024;
+  private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final int IDLE = 0;
+  private static final int BUSY = 1;
+  private static final int RETIRED = 2;
+
+  private final AtomicInteger state = new AtomicInteger(IDLE);
+  private final Thread thread;
+
+  // The call and its outcome are handed over through the volatile
+  // fields: pending from caller to segment, done back again.
+  private Thread caller;
+  private volatile Supplier<Object> pending;
+  private Object result;
+  private Throwable failure;
+  private volatile boolean done;
+
+  StackSegment() {
+    thread = new Thread(null, this, "lox-stack-segment", STACK_SIZE);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  // Reserves the segment for a call. Fails if it has retired.
+  boolean claim() {
+    return state.compareAndSet(IDLE, BUSY);
+  }
+
+  // Runs the call on the segment's thread and waits for it. Only valid
+  // after a successful claim().
+  Object run(Supplier<Object> call) {
+    caller = Thread.currentThread();
+    done = false;
+    pending = call;
+    LockSupport.unpark(thread);
+
+    // On a task's worker, the pool starts a spare worker while this one
+    // waits.
+    ForkJoinPool.ManagedBlocker waiter = new ForkJoinPool.ManagedBlocker() {
+      @Override
+      public boolean block() {
+        LockSupport.park(this);
+        return done;
+      }
+
+      @Override
+      public boolean isReleasable() {
+        return done;
+      }
+    };
+    while (true) {
+      try {
+        ForkJoinPool.managedBlock(waiter);
+        break;
+      } catch (InterruptedException e) {
+        // Nothing interrupts the interpreter on purpose; keep waiting for
+        // the call to finish.
+      }
+    }
+
+    Object value = result;
+    Throwable error = failure;
+    result = null;
+    failure = null;
+    caller = null;
+    state.set(IDLE);
+
+    if (error instanceof RuntimeException) throw (RuntimeException)error;
+    if (error instanceof Error) throw (Error)error;
+    return value;
+  }
+
+  @Override
+  public void run() {
+    long idleSince = System.nanoTime();
+    while (true) {
+      Supplier<Object> call = pending;
+      if (call == null) {
+        LockSupport.parkNanos(this, IDLE_NANOS);
+        // A claim that lands first keeps the segment alive; its call is
+        // on the way.
+        if (pending == null && System.nanoTime() - idleSince >= IDLE_NANOS
+            && state.compareAndSet(IDLE, RETIRED)) {
+          return;
+        }
+        continue;
+      }
+
+      pending = null;
+      try {
+        result = call.get();
+      } catch (Throwable error) {
+        failure = error;
+      }
+      Thread waiting = caller;
+      done = true;
+      LockSupport.unpark(waiting);
+      idleSince = System.nanoTime();
+    }
+  }
+}
@@ -8,6 +8,7 @@ abstract class Stmt{
     R visitClassStmt(Class stmt);
     R visitFunctionStmt(Function stmt);
     R visitExpressionStmt(Expression stmt);
+    R visitImportStmt(Import stmt);
     R visitIfStmt(If stmt);
     R visitPrintStmt(Print stmt);
     R visitReturnStmt(Return stmt);
@@ -29,8 +30,9 @@ abstract class Stmt{
   }
 
   static class Class extends Stmt {
-    Class(Token name, List<Stmt.Function> methods){
+    Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods){
       this.name = name;
+      this.superclass = superclass;
       this.methods = methods;
     }
 
@@ -40,6 +42,7 @@ abstract class Stmt{
     }
 
     final Token name;
+    final Expr.Variable superclass;
     final List<Stmt.Function> methods;
   }
 
@@ -73,6 +76,21 @@ abstract class Stmt{
     final Expr expression;
   }
 
+  static class Import extends Stmt {
+    Import(Token keyword, Token path){
+      this.keyword = keyword;
+      this.path = path;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitImportStmt(this);
+    }
+
+    final Token keyword;
+    final Token path;
+  }
+
   static class If extends Stmt {
     If(Expr condition, Stmt thenBranch, Stmt elseBranch){
       this.condition = condition;
@@ -0,0 +1,61 @@
+package com.yadav.lox;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+// The runtime's interned strings: at most one interned LoxString per
+// content, so two interned strings are equal exactly when they're the
+// same object. Values are held weakly; once nothing references a string
+// its entry is dropped the next time the table is touched.
+class StringTable {
+  private final Map<String, Entry> strings = new HashMap<>();
+  private final ReferenceQueue<LoxString> collected = new ReferenceQueue<>();
+  private long hits = 0;
+  private long misses = 0;
+
+  private static final class Entry extends WeakReference<LoxString> {
+    final String key;
+
+    Entry(String key, LoxString value, ReferenceQueue<LoxString> queue) {
+      super(value, queue);
+      this.key = key;
+    }
+  }
+
+  synchronized LoxString intern(String value) {
+    expunge();
+
+    Entry entry = strings.get(value);
+    LoxString string = entry == null ? null : entry.get();
+    if (string != null) {
+      hits++;
+      return string;
+    }
+
+    misses++;
+    string = LoxString.interned(value);
+    strings.put(value, new Entry(value, string, collected));
+    return string;
+  }
+
+  synchronized int size() {
+    expunge();
+    return strings.size();
+  }
+
+  private void expunge() {
+    Object reference;
+    while ((reference = collected.poll()) != null) {
+      Entry entry = (Entry)reference;
+      // The key may already have been re-interned under a new entry.
+      strings.remove(entry.key, entry);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("strings: %d interned, %d hits, %d misses", size(), hits, misses);
+  }
+}
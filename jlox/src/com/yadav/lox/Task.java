@@ -0,0 +1,83 @@
+package com.yadav.lox;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// A function running as a task, made by spawn(). The function is called
+// with no arguments by an interpreter of its own, which shares the
+// spawning interpreter's globals (see TaskNatives for what is shared and
+// how).
+final class Task extends RecursiveTask<Object> implements TaskGroup.Work {
+  // Work-stealing, with a worker per core. A task that joins another runs
+  // queued tasks while it waits, instead of blocking its worker.
+  static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  private final LoxCallable function;
+  private final Interpreter spawner;
+  private final TaskGroup group;
+
+  // Written by the task before it completes and read after join(), which
+  // orders the two.
+  private RuntimeException error;
+  private volatile boolean joined = false;
+
+  private Task(LoxCallable function, Interpreter spawner, TaskGroup group) {
+    this.function = function;
+    this.spawner = spawner;
+    this.group = group;
+  }
+
+  static Task spawn(LoxCallable function, Interpreter spawner, TaskGroup group) {
+    Task task = new Task(function, spawner, group);
+    group.started();
+    schedule(task);
+    return task;
+  }
+
+  // Inside the pool, fork() queues the work on this worker, where idle
+  // workers steal it from; outside, it goes to the pool's shared queue.
+  static void schedule(ForkJoinTask<?> work) {
+    if (getPool() == pool) {
+      work.fork();
+    } else {
+      pool.execute(work);
+    }
+  }
+
+  @Override
+  protected Object compute() {
+    try {
+      return spawner.forTask().runTask(function);
+    } catch (RuntimeError | NativeError error) {
+      this.error = error;
+      return null;
+    } finally {
+      group.finished(this);
+    }
+  }
+
+  @Override
+  public RuntimeException error() {
+    return error;
+  }
+
+  @Override
+  public boolean joined() {
+    return joined;
+  }
+
+  // Waits for the task and returns the function's result, or throws what
+  // ended it.
+  Object await() {
+    joined = true;
+    Object result = join();
+    if (error != null) throw error;
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "<task>";
+  }
+}
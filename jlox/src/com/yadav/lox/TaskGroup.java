@@ -0,0 +1,59 @@
+package com.yadav.lox;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The tasks and actors started by one program, so that it can wait for
+// them all before it ends and report errors no one joined. An actor
+// counts as running only while it has messages to handle.
+final class TaskGroup {
+  // What a group waits for: a task, or an actor.
+  interface Work {
+    // What ended the work, or null.
+    RuntimeException error();
+
+    boolean joined();
+  }
+
+  private final AtomicInteger running = new AtomicInteger();
+  private final Queue<Work> failed = new ConcurrentLinkedQueue<>();
+
+  // Work that starts more work calls started() for it before its own
+  // finished(), so the count only reaches zero when everything is done.
+  void started() {
+    running.incrementAndGet();
+  }
+
+  void finished(Work work) {
+    if (work.error() != null) failed.add(work);
+    if (running.decrementAndGet() == 0) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  // Waits until nothing in the group is running, and returns the error
+  // of the first failure that was never joined, if any.
+  RuntimeError awaitAll() {
+    boolean interrupted = false;
+    synchronized (this) {
+      while (running.get() > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+
+    // A native spawned directly fails without a line to report, so
+    // only errors from Lox code count here.
+    for (Work work : failed) {
+      if (!work.joined() && work.error() instanceof RuntimeError) return (RuntimeError)work.error();
+    }
+    return null;
+  }
+}
@@ -0,0 +1,99 @@
+package com.yadav.lox;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// spawn(fn) runs fn, a function that takes no arguments, as a Task on a
+// work-stealing ForkJoinPool and returns a handle to it. join(task) waits
+// for the task and returns what fn returned, or raises the error that
+// ended it. A program doesn't end until all of its tasks have, and an
+// error in a task that is never joined is reported then.
+//
+// Tasks can also talk without sharing anything: Channel(capacity) makes
+// a bounded channel (see Channel), select(channels) receives from
+// whichever of several channels is ready first, and actor(handler)
+// starts an actor that handles the messages sent to it one at a time
+// (see Actor). join() also waits for a stopped actor.
+//
+// Tasks run in parallel and share the globals and whatever their
+// functions close over. The memory model:
+//
+//  - Everything a task did before spawn() happens before the new task
+//    starts, and everything a task did happens before a join() on it
+//    returns.
+//  - Variables may be read and assigned by any number of tasks at once.
+//    A read sees some value that was written, never a partial one, and
+//    storing an object in a variable publishes it: a task that reads the
+//    variable sees the object at least as complete as it was when it was
+//    stored.
+//  - Instance fields and the elements of arrays and maps are plain
+//    memory. When two tasks use the same one at the same time and either
+//    writes, that is a data race and the result is unspecified; updates
+//    may be lost and a reader may see an object that isn't fully built.
+//    Share such objects through the ordering above instead.
+//  - Sending a value on a channel or to an actor happens before it is
+//    received or handled.
+//  - A print statement writes its line whole, but lines from different
+//    tasks come out in whatever order the tasks ran.
+//  - Promises belong to the task that made them; only it can await them.
+//
+// The interpreter's own shared state, such as inline caches, memo caches
+// and the string table, is safe under any of this.
+final class TaskNatives {
+  private TaskNatives() {}
+
+  @Native
+  static Object spawn(Interpreter interpreter, Object function) {
+    if (!(function instanceof LoxCallable)) throw new NativeError("Can only spawn functions.");
+    LoxCallable callable = (LoxCallable)function;
+    if (callable.arity() != 0) throw new NativeError("A spawned function can't take arguments.");
+    return Task.spawn(callable, interpreter, interpreter.tasks());
+  }
+
+  @Native
+  static Object join(Object task) {
+    if (task instanceof Actor) {
+      ((Actor)task).await();
+      return null;
+    }
+    if (!(task instanceof Task)) throw new NativeError("Can only join tasks and actors.");
+    return ((Task)task).await();
+  }
+
+  @Native("Channel")
+  static Object newChannel(double capacity) {
+    if (capacity < 1 || capacity != Math.floor(capacity) || capacity > Integer.MAX_VALUE - 8) {
+      throw new NativeError("Channel capacity must be a positive integer.");
+    }
+    return new Channel((int)capacity);
+  }
+
+  // Returns [index, value] for the channel a value came from, or nil once
+  // all of them are closed and empty.
+  @Native
+  static Object select(Object channels) {
+    if (!(channels instanceof LoxArray) || ((LoxArray)channels).size() == 0) {
+      throw new NativeError("Can only select from a non-empty array of channels.");
+    }
+    LoxArray array = (LoxArray)channels;
+    Channel[] selected = new Channel[array.size()];
+    for (int i = 0; i < selected.length; i++) {
+      if (!(array.get(i) instanceof Channel)) {
+        throw new NativeError("Can only select from a non-empty array of channels.");
+      }
+      selected[i] = (Channel)array.get(i);
+    }
+
+    int start = ThreadLocalRandom.current().nextInt(selected.length);
+    Object[] ready = Channel.select(selected, start);
+    if ((double)ready[0] < 0) return null;
+    return LoxArray.of(ready);
+  }
+
+  @Native
+  static Object actor(Interpreter interpreter, Object handler) {
+    if (!(handler instanceof LoxCallable) || ((LoxCallable)handler).arity() != 1) {
+      throw new NativeError("An actor's handler must be a function of one argument.");
+    }
+    return new Actor((LoxCallable)handler, interpreter, interpreter.tasks());
+  }
+}
@@ -0,0 +1,33 @@
+package com.yadav.lox;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+// Helpers for the thread pools the runtime creates.
+final class Threads {
+  private Threads() {}
+
+  // A virtual thread per task when the runtime has them, so thousands of
+  // blocked tasks don't mean thousands of platform threads, and the
+  // fallback otherwise. Looked up reflectively since this code also has
+  // to run on releases without them.
+  static ExecutorService virtualOr(Supplier<ExecutorService> fallback) {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService)factory.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return fallback.get();
+    }
+  }
+
+  static ThreadFactory daemon(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,167 @@
+package com.yadav.tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Runs every .lox script in a corpus directory on every registered
+// execution engine and compares stdout, stderr and the exit code with
+// the script's .expected file. With --update the expectations are
+// rewritten from the reference (first registered) engine.
+//
+// Each engine also runs every script with each of the VARIANTS flags,
+// which must not change what a script does. A script can add flags of
+// its own to every run with a "// flags:" line at its top. Scripts run
+// in the corpus directory, so files they open are named relative to it.
+public class Conformance {
+  private static final long TIMEOUT_SECONDS = 120;
+  private static final String FLAGS = "// flags:";
+
+  // Memoization is off by default, so it's checked here: with the usual
+  // capacity, and with one so small that almost every call evicts.
+  private static final List<List<String>> VARIANTS = List.of(
+      List.of(),
+      List.of("--memoize"),
+      List.of("--memoize=2"));
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    boolean update = false;
+    String corpus = null;
+    for (String arg : args) {
+      if (arg.equals("--update")) {
+        update = true;
+      } else {
+        corpus = arg;
+      }
+    }
+
+    if (corpus == null) {
+      System.err.println("Usage : conformance [--update] <corpus directory>");
+      System.exit(64);
+    }
+
+    List<String> engines = Arrays.asList(run(null, "--list-engines").stdout.trim().split("\n"));
+    File[] scripts = new File(corpus).listFiles((dir, name) -> name.endsWith(".lox"));
+    Arrays.sort(scripts);
+
+    int failures = 0;
+    for (File script : scripts) {
+      Path expectedPath = Paths.get(script.getPath().replaceAll("\\.lox$", ".expected"));
+
+      List<String> flags = flags(script.toPath());
+
+      if (update) {
+        Result reference = run(engines.get(0), VARIANTS.get(0), flags, script);
+        Files.write(expectedPath, reference.format().getBytes(StandardCharsets.UTF_8));
+      }
+
+      String expected = new String(Files.readAllBytes(expectedPath), StandardCharsets.UTF_8);
+      for (String engine : engines) {
+        for (List<String> variant : VARIANTS) {
+          Result result = run(engine, variant, flags, script);
+          String name = String.join(" ", variant) + (variant.isEmpty() ? "" : " ") + script.getName();
+          if (result.format().equals(expected)) {
+            System.out.println("PASS " + engine + " " + name);
+            continue;
+          }
+          failures++;
+          System.out.println("FAIL " + engine + " " + name);
+          System.out.println("--- expected");
+          System.out.print(expected);
+          System.out.println("--- actual");
+          System.out.print(result.format());
+        }
+      }
+    }
+
+    System.out.println(failures == 0 ? "All engines conform." : failures + " failure(s).");
+    if (failures > 0) System.exit(1);
+  }
+
+  // The flags from the script's leading "// flags:" lines.
+  private static List<String> flags(Path script) throws IOException {
+    List<String> flags = new ArrayList<>();
+    for (String line : Files.readAllLines(script, StandardCharsets.UTF_8)) {
+      if (!line.startsWith(FLAGS)) break;
+      String declared = line.substring(FLAGS.length()).trim();
+      if (!declared.isEmpty()) flags.addAll(Arrays.asList(declared.split("\\s+")));
+    }
+    return flags;
+  }
+
+  // The script's own flags come last, so they win over the variant's.
+  private static Result run(String engine, List<String> variant, List<String> flags, File script)
+      throws IOException, InterruptedException {
+    List<String> loxArgs = new ArrayList<>();
+    loxArgs.add("--engine=" + engine);
+    loxArgs.addAll(variant);
+    loxArgs.addAll(flags);
+    loxArgs.add(script.getName());
+    return run(script.getAbsoluteFile().getParentFile(), loxArgs.toArray(new String[0]));
+  }
+
+  // Runs Lox in the directory, or in this one if it's null.
+  private static Result run(File directory, String... loxArgs)
+      throws IOException, InterruptedException {
+    List<String> classPath = new ArrayList<>();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      classPath.add(new File(entry).getAbsolutePath());
+    }
+
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-cp");
+    command.add(String.join(File.pathSeparator, classPath));
+    command.add("com.yadav.lox.Lox");
+    command.addAll(Arrays.asList(loxArgs));
+
+    File stdout = File.createTempFile("lox-stdout", ".txt");
+    File stderr = File.createTempFile("lox-stderr", ".txt");
+    try {
+      Process process = new ProcessBuilder(command)
+          .directory(directory)
+          .redirectOutput(stdout)
+          .redirectError(stderr)
+          .start();
+
+      int exitCode;
+      if (process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        exitCode = process.exitValue();
+      } else {
+        process.destroyForcibly();
+        exitCode = -1;
+      }
+
+      return new Result(
+          new String(Files.readAllBytes(stdout.toPath()), StandardCharsets.UTF_8),
+          new String(Files.readAllBytes(stderr.toPath()), StandardCharsets.UTF_8),
+          exitCode);
+    } finally {
+      stdout.delete();
+      stderr.delete();
+    }
+  }
+
+  private static class Result {
+    final String stdout;
+    final String stderr;
+    final int exitCode;
+
+    Result(String stdout, String stderr, int exitCode) {
+      this.stdout = stdout;
+      this.stderr = stderr;
+      this.exitCode = exitCode;
+    }
+
+    String format() {
+      return "-- stdout\n" + stdout + "-- stderr\n" + stderr + "-- exit " + exitCode + "\n";
+    }
+  }
+}
@@ -17,8 +17,13 @@ public class GenerateAst {
       "Ternary : Expr left, Token operator_one, Expr mid, Token operator_two, Expr right", 
       "Binary : Expr left, Token operator, Expr right",
       "Call : Expr callee, Token paren, List<Expr> arguments",
-      "Get : Expr object, Token name",
-      "Set : Expr object, Token name, Expr value",
+      "Get : Expr object, Token name ; int site",
+      "Set : Expr object, Token name, Expr value ; int site",
+      "Index : Expr object, Token bracket, Expr index",
+      "IndexSet : Expr object, Token bracket, Expr index, Expr value",
+      "Super : Token keyword, Token method",
+      "This : Token keyword",
+      "Array : Token bracket, List<Expr> elements",
       "Grouping : Expr expression",
       "Literal : Object value",
       "Logical : Expr left, Token operator, Expr right",
@@ -29,9 +34,10 @@ public class GenerateAst {
 
     defineAst(outputDir, "Stmt", Arrays.asList(
       "Block : List<Stmt> statements",
-      "Class : Token name, List<Stmt.Function> methods",
+      "Class : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
       "Function : Token name, List<Token> params, List<Stmt> body",     
       "Expression : Expr expression",
+      "Import : Token keyword, Token path",
       "If : Expr condition, Stmt thenBranch, Stmt elseBranch",
       "Print : Expr expression",
       "Return : Token keyword, Expr value",
@@ -58,7 +64,16 @@ public class GenerateAst {
     for (String type : types) {
       String className = type.split(":")[0].trim();
       String fields = type.split(":")[1].trim();
-      defineType(writer, baseName, className, fields);
+
+      // Fields after a ';' aren't constructor parameters. They are left
+      // mutable for the Resolver, which fills them in before the tree is
+      // shared.
+      String state = "";
+      if (fields.contains(";")) {
+        state = fields.split(";")[1].trim();
+        fields = fields.split(";")[0].trim();
+      }
+      defineType(writer, baseName, className, fields, state);
     }
 
     // the base accept method
@@ -83,7 +98,7 @@ public class GenerateAst {
 
 private static void defineType (
     PrintWriter writer, String baseName,
-    String className, String fieldList
+    String className, String fieldList, String stateList
   ) {
     writer.println("  static class " + className + " extends " +  baseName + " {");
 
@@ -110,6 +125,11 @@ private static void defineType (
     for (String field : fields) {
       writer.println("    final " + field + ";");
     }
+    if (!stateList.isEmpty()) {
+      for (String field : stateList.split(", ")) {
+        writer.println("    " + field + ";");
+      }
+    }
     writer.println("  }");
     writer.println(); // empty line after each subclass
   }